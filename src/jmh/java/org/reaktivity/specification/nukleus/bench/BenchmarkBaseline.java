@@ -0,0 +1,151 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.bench;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+public final class BenchmarkBaseline
+{
+    private static final String ALLOC_RATE_NORM = "gc.alloc.rate.norm";
+
+    private static final double ALLOC_TOLERANCE_BYTES = 8.0;
+
+    public static void main(
+        String... args) throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.err.println("usage: BenchmarkBaseline <result.json> <baseline.json> [threshold]");
+            System.exit(2);
+        }
+
+        final Path result = Paths.get(args[0]);
+        final Path baseline = Paths.get(args[1]);
+        final double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 0.1;
+
+        if (!Files.exists(baseline))
+        {
+            Files.createDirectories(baseline.toAbsolutePath().getParent());
+            Files.copy(result, baseline);
+            System.out.format("Saved benchmark baseline %s\n", baseline);
+        }
+        else
+        {
+            final Map<String, double[]> expected = parse(baseline);
+            final Map<String, double[]> actual = parse(result);
+
+            int regressions = 0;
+            for (Map.Entry<String, double[]> entry : actual.entrySet())
+            {
+                final String benchmark = entry.getKey();
+                final double[] scores = entry.getValue();
+                final double[] baselines = expected.get(benchmark);
+
+                if (baselines == null)
+                {
+                    System.out.format("%s: no baseline\n", benchmark);
+                    continue;
+                }
+
+                final double score = scores[0];
+                final double alloc = scores[1];
+                final double baselineScore = baselines[0];
+                final double baselineAlloc = baselines[1];
+
+                final boolean slower = score < baselineScore * (1.0 - threshold);
+                final boolean allocates = alloc > baselineAlloc * (1.0 + threshold) + ALLOC_TOLERANCE_BYTES;
+
+                System.out.format("%s: %.1f ops/s (baseline %.1f), %.1f B/op (baseline %.1f)%s\n",
+                    benchmark, score, baselineScore, alloc, baselineAlloc,
+                    slower || allocates ? " REGRESSED" : "");
+
+                if (slower || allocates)
+                {
+                    regressions++;
+                }
+            }
+
+            if (regressions != 0)
+            {
+                System.err.format("%d benchmark(s) regressed beyond %.0f%% of baseline %s\n",
+                    regressions, threshold * 100, baseline);
+                System.exit(1);
+            }
+        }
+    }
+
+    private static Map<String, double[]> parse(
+        Path path) throws IOException
+    {
+        final Map<String, double[]> scores = new LinkedHashMap<>();
+
+        try (Reader reader = Files.newBufferedReader(path, UTF_8))
+        {
+            for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray())
+            {
+                final JsonObject benchmark = element.getAsJsonObject();
+                final JsonObject params = benchmark.getAsJsonObject("params");
+                final String name = params != null
+                        ? String.format("%s %s", benchmark.get("benchmark").getAsString(), params)
+                        : benchmark.get("benchmark").getAsString();
+
+                final double score = score(benchmark.getAsJsonObject("primaryMetric"));
+
+                double alloc = 0.0;
+                final JsonObject secondaries = benchmark.getAsJsonObject("secondaryMetrics");
+                if (secondaries != null)
+                {
+                    for (Map.Entry<String, JsonElement> secondary : secondaries.entrySet())
+                    {
+                        if (secondary.getKey().endsWith(ALLOC_RATE_NORM))
+                        {
+                            final double rate = score(secondary.getValue().getAsJsonObject());
+                            alloc = Double.isNaN(rate) ? 0.0 : rate;
+                        }
+                    }
+                }
+
+                scores.put(name, new double[] { score, alloc });
+            }
+        }
+
+        return scores;
+    }
+
+    private static double score(
+        JsonObject metric)
+    {
+        final JsonElement score = metric != null ? metric.get("score") : null;
+        return score != null ? score.getAsDouble() : Double.NaN;
+    }
+
+    private BenchmarkBaseline()
+    {
+        // utility
+    }
+}
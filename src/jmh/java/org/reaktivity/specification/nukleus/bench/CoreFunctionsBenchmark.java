@@ -0,0 +1,94 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reaktivity.specification.nukleus.CoreFunctions;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class CoreFunctionsBenchmark
+{
+    private final MutableDirectBuffer buffer = new UnsafeBuffer(new byte[1024]);
+    private final byte[] bytes = new byte[64];
+
+    private String text = "hello world";
+    private long value = 1L << 42;
+
+    @Benchmark
+    public byte[] string()
+    {
+        return CoreFunctions.string(text);
+    }
+
+    @Benchmark
+    public byte[] string16()
+    {
+        return CoreFunctions.string16(text);
+    }
+
+    @Benchmark
+    public byte[] string16n()
+    {
+        return CoreFunctions.string16n(text);
+    }
+
+    @Benchmark
+    public byte[] varint()
+    {
+        return CoreFunctions.varint(value);
+    }
+
+    @Benchmark
+    public int putVarint()
+    {
+        return CoreFunctions.putVarint(buffer, 0, value);
+    }
+
+    @Benchmark
+    public byte[] varbytes()
+    {
+        return CoreFunctions.varbytes(bytes);
+    }
+
+    @Benchmark
+    public int putVarbytes()
+    {
+        return CoreFunctions.putVarbytes(buffer, 0, bytes);
+    }
+
+    @Benchmark
+    public byte capabilities()
+    {
+        return CoreFunctions.capabilities("CHALLENGE");
+    }
+}
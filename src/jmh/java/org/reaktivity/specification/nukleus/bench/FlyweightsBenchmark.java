@@ -0,0 +1,231 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.bench;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.ResetFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.WindowFW;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Fork(3)
+@Warmup(iterations = 5, time = 1, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = SECONDS)
+@OutputTimeUnit(SECONDS)
+public class FlyweightsBenchmark
+{
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+    private final EndFW endRO = new EndFW();
+    private final ResetFW resetRO = new ResetFW();
+    private final WindowFW windowRO = new WindowFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final ResetFW.Builder resetRW = new ResetFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+
+    private final MutableDirectBuffer writeBuffer = new UnsafeBuffer(new byte[64 * 1024]);
+    private final MutableDirectBuffer payload = new UnsafeBuffer(new byte[1024]);
+    private final MutableDirectBuffer emptyRO = new UnsafeBuffer(new byte[0]);
+
+    private final MutableDirectBuffer beginBuffer = new UnsafeBuffer(new byte[1024]);
+    private final MutableDirectBuffer dataBuffer = new UnsafeBuffer(new byte[2048]);
+    private final MutableDirectBuffer endBuffer = new UnsafeBuffer(new byte[1024]);
+    private final MutableDirectBuffer resetBuffer = new UnsafeBuffer(new byte[1024]);
+    private final MutableDirectBuffer windowBuffer = new UnsafeBuffer(new byte[1024]);
+
+    private int beginLimit;
+    private int dataLimit;
+    private int endLimit;
+    private int resetLimit;
+    private int windowLimit;
+
+    @Setup
+    public void init()
+    {
+        beginLimit = buildBegin(beginBuffer).limit();
+        dataLimit = buildData(dataBuffer).limit();
+        endLimit = buildEnd(endBuffer).limit();
+        resetLimit = buildReset(resetBuffer).limit();
+        windowLimit = buildWindow(windowBuffer).limit();
+    }
+
+    @Benchmark
+    public BeginFW buildBegin()
+    {
+        return buildBegin(writeBuffer);
+    }
+
+    @Benchmark
+    public DataFW buildData()
+    {
+        return buildData(writeBuffer);
+    }
+
+    @Benchmark
+    public EndFW buildEnd()
+    {
+        return buildEnd(writeBuffer);
+    }
+
+    @Benchmark
+    public ResetFW buildReset()
+    {
+        return buildReset(writeBuffer);
+    }
+
+    @Benchmark
+    public WindowFW buildWindow()
+    {
+        return buildWindow(writeBuffer);
+    }
+
+    @Benchmark
+    public long wrapBegin()
+    {
+        return beginRO.wrap(beginBuffer, 0, beginLimit).streamId();
+    }
+
+    @Benchmark
+    public int wrapData()
+    {
+        return dataRO.wrap(dataBuffer, 0, dataLimit).length();
+    }
+
+    @Benchmark
+    public long wrapEnd()
+    {
+        return endRO.wrap(endBuffer, 0, endLimit).streamId();
+    }
+
+    @Benchmark
+    public long wrapReset()
+    {
+        return resetRO.wrap(resetBuffer, 0, resetLimit).streamId();
+    }
+
+    @Benchmark
+    public int wrapWindow()
+    {
+        return windowRO.wrap(windowBuffer, 0, windowLimit).padding();
+    }
+
+    private BeginFW buildBegin(
+        MutableDirectBuffer buffer)
+    {
+        return beginRW.wrap(buffer, 0, buffer.capacity())
+                      .routeId(0x0000_0001_0000_0002L)
+                      .streamId(0x0000_0000_0000_0003L)
+                      .sequence(0L)
+                      .acknowledge(0L)
+                      .maximum(8192)
+                      .timestamp(0L)
+                      .traceId(1L)
+                      .authorization(0L)
+                      .affinity(0L)
+                      .extension(emptyRO, 0, 0)
+                      .build();
+    }
+
+    private DataFW buildData(
+        MutableDirectBuffer buffer)
+    {
+        return dataRW.wrap(buffer, 0, buffer.capacity())
+                     .routeId(0x0000_0001_0000_0002L)
+                     .streamId(0x0000_0000_0000_0003L)
+                     .sequence(0L)
+                     .acknowledge(0L)
+                     .maximum(8192)
+                     .timestamp(0L)
+                     .traceId(1L)
+                     .authorization(0L)
+                     .flags(0x03)
+                     .budgetId(0L)
+                     .reserved(payload.capacity())
+                     .payload(payload, 0, payload.capacity())
+                     .extension(emptyRO, 0, 0)
+                     .build();
+    }
+
+    private EndFW buildEnd(
+        MutableDirectBuffer buffer)
+    {
+        return endRW.wrap(buffer, 0, buffer.capacity())
+                    .routeId(0x0000_0001_0000_0002L)
+                    .streamId(0x0000_0000_0000_0003L)
+                    .sequence(0L)
+                    .acknowledge(0L)
+                    .maximum(8192)
+                    .timestamp(0L)
+                    .traceId(1L)
+                    .authorization(0L)
+                    .extension(emptyRO, 0, 0)
+                    .build();
+    }
+
+    private ResetFW buildReset(
+        MutableDirectBuffer buffer)
+    {
+        return resetRW.wrap(buffer, 0, buffer.capacity())
+                      .routeId(0x0000_0001_0000_0002L)
+                      .streamId(0x0000_0000_0000_0003L)
+                      .sequence(0L)
+                      .acknowledge(0L)
+                      .maximum(8192)
+                      .timestamp(0L)
+                      .traceId(1L)
+                      .authorization(0L)
+                      .extension(emptyRO, 0, 0)
+                      .build();
+    }
+
+    private WindowFW buildWindow(
+        MutableDirectBuffer buffer)
+    {
+        return windowRW.wrap(buffer, 0, buffer.capacity())
+                       .routeId(0x0000_0001_0000_0002L)
+                       .streamId(0x0000_0000_0000_0003L)
+                       .sequence(0L)
+                       .acknowledge(0L)
+                       .maximum(8192)
+                       .timestamp(0L)
+                       .traceId(1L)
+                       .authorization(0L)
+                       .budgetId(0L)
+                       .padding(0)
+                       .minimum(0)
+                       .capabilities(0)
+                       .build();
+    }
+}
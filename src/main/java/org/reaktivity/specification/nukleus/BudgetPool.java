@@ -0,0 +1,290 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.align;
+import static org.agrona.BitUtil.isPowerOfTwo;
+import static org.agrona.IoUtil.ensureDirectoryExists;
+import static org.agrona.IoUtil.mapExistingFile;
+import static org.agrona.IoUtil.mapNewFile;
+import static org.agrona.IoUtil.unmap;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.collections.Hashing;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+public final class BudgetPool implements AutoCloseable
+{
+    public static final long NO_BUDGET_ID = 0L;
+    public static final long NO_CREDIT = -1L;
+
+    private static final long DETACHED_BUDGET_ID = Long.MIN_VALUE;
+
+    private static final int BUDGET_POOL_VERSION = 1;
+
+    private static final int FIELD_OFFSET_VERSION = 0;
+    private static final int FIELD_OFFSET_BUDGET_COUNT = FIELD_OFFSET_VERSION + SIZE_OF_INT;
+    private static final int FIELD_OFFSET_ATTACHED = align(FIELD_OFFSET_BUDGET_COUNT + SIZE_OF_INT, SIZE_OF_LONG);
+
+    private static final int END_OF_META_DATA_OFFSET = align(FIELD_OFFSET_ATTACHED + SIZE_OF_LONG, CACHE_LINE_LENGTH);
+
+    private static final int BUDGET_OFFSET_BUDGET_ID = 0;
+    private static final int BUDGET_OFFSET_CREDIT = BUDGET_OFFSET_BUDGET_ID + SIZE_OF_LONG;
+    private static final int BUDGET_LENGTH = CACHE_LINE_LENGTH;
+
+    private final MappedByteBuffer mapped;
+    private final AtomicBuffer metadata;
+    private final AtomicBuffer budgets;
+    private final int budgetCount;
+    private final int mask;
+
+    private BudgetPool(
+        MappedByteBuffer mapped)
+    {
+        this.mapped = mapped;
+        this.metadata = new UnsafeBuffer(mapped, 0, END_OF_META_DATA_OFFSET);
+        assert metadata.getInt(FIELD_OFFSET_VERSION) == BUDGET_POOL_VERSION;
+
+        this.budgetCount = metadata.getInt(FIELD_OFFSET_BUDGET_COUNT);
+        this.mask = budgetCount - 1;
+        this.budgets = new UnsafeBuffer(mapped, END_OF_META_DATA_OFFSET, budgetCount * BUDGET_LENGTH);
+    }
+
+    public static BudgetPool create(
+        File location,
+        int budgetCount)
+    {
+        if (budgetCount <= 0 || !isPowerOfTwo(budgetCount))
+        {
+            throw new IllegalArgumentException(String.format("invalid budget pool: budgetCount=%d", budgetCount));
+        }
+
+        final File file = location.getAbsoluteFile();
+        final long length = END_OF_META_DATA_OFFSET + (long) budgetCount * BUDGET_LENGTH;
+        ensureDirectoryExists(file.getParentFile(), "budgets");
+        final MappedByteBuffer mapped = mapNewFile(file, length, false);
+        final UnsafeBuffer metadata = new UnsafeBuffer(mapped, 0, END_OF_META_DATA_OFFSET);
+        metadata.putInt(FIELD_OFFSET_BUDGET_COUNT, budgetCount);
+        metadata.putIntOrdered(FIELD_OFFSET_VERSION, BUDGET_POOL_VERSION);
+
+        return new BudgetPool(mapped);
+    }
+
+    public static BudgetPool map(
+        File location)
+    {
+        return new BudgetPool(mapExistingFile(location.getAbsoluteFile(), "budgets"));
+    }
+
+    public int budgetCount()
+    {
+        return budgetCount;
+    }
+
+    public long attached()
+    {
+        return metadata.getLongVolatile(FIELD_OFFSET_ATTACHED);
+    }
+
+    public boolean attach(
+        long budgetId)
+    {
+        assert budgetId != NO_BUDGET_ID && budgetId != DETACHED_BUDGET_ID;
+
+        for (;;)
+        {
+            int detachedOffset = -1;
+            int freeOffset = -1;
+
+            int index = Hashing.hash(budgetId, mask);
+            for (int i = 0; i < budgetCount; i++)
+            {
+                final int offset = index * BUDGET_LENGTH + BUDGET_OFFSET_BUDGET_ID;
+                final long existingId = budgets.getLongVolatile(offset);
+
+                if (existingId == budgetId)
+                {
+                    return false;
+                }
+
+                if (existingId == DETACHED_BUDGET_ID && detachedOffset == -1)
+                {
+                    detachedOffset = offset;
+                }
+
+                if (existingId == NO_BUDGET_ID)
+                {
+                    freeOffset = offset;
+                    break;
+                }
+
+                index = (index + 1) & mask;
+            }
+
+            if (detachedOffset == -1 && freeOffset == -1)
+            {
+                throw new IllegalStateException(String.format("budget pool exhausted: budgetCount=%d", budgetCount));
+            }
+
+            final int offset = detachedOffset != -1 ? detachedOffset : freeOffset;
+            final long expectedId = detachedOffset != -1 ? DETACHED_BUDGET_ID : NO_BUDGET_ID;
+            if (budgets.compareAndSetLong(offset, expectedId, budgetId))
+            {
+                metadata.getAndAddLong(FIELD_OFFSET_ATTACHED, 1L);
+                return true;
+            }
+        }
+    }
+
+    public long detach(
+        long budgetId)
+    {
+        final int offset = creditOffset(budgetId);
+        if (offset == -1)
+        {
+            return NO_CREDIT;
+        }
+
+        final long credit = budgets.getAndSetLong(offset, 0L);
+        final int idOffset = offset - BUDGET_OFFSET_CREDIT + BUDGET_OFFSET_BUDGET_ID;
+        if (!budgets.compareAndSetLong(idOffset, budgetId, DETACHED_BUDGET_ID))
+        {
+            return NO_CREDIT;
+        }
+
+        metadata.getAndAddLong(FIELD_OFFSET_ATTACHED, -1L);
+        return credit;
+    }
+
+    public long credit(
+        long budgetId,
+        long credit)
+    {
+        assert credit >= 0L;
+
+        final int offset = attachedCreditOffset(budgetId);
+        return budgets.getAndAddLong(offset, credit) + credit;
+    }
+
+    public long debit(
+        long budgetId,
+        long debit)
+    {
+        assert debit >= 0L;
+
+        final int offset = attachedCreditOffset(budgetId);
+
+        long credit;
+        do
+        {
+            credit = budgets.getLongVolatile(offset);
+            if (credit < debit)
+            {
+                return NO_CREDIT;
+            }
+        }
+        while (!budgets.compareAndSetLong(offset, credit, credit - debit));
+
+        return credit - debit;
+    }
+
+    public int claim(
+        long budgetId,
+        int padding,
+        int minimum,
+        int maximum)
+    {
+        assert padding >= 0 && minimum >= 0 && maximum >= minimum;
+
+        final int offset = attachedCreditOffset(budgetId);
+        final int required = Math.max(minimum, 1);
+
+        long credit;
+        int claimed;
+        do
+        {
+            credit = budgets.getLongVolatile(offset);
+            claimed = (int) Math.min(maximum, credit - padding);
+            if (claimed < required)
+            {
+                return 0;
+            }
+        }
+        while (!budgets.compareAndSetLong(offset, credit, credit - claimed - padding));
+
+        return claimed;
+    }
+
+    public long available(
+        long budgetId)
+    {
+        final int offset = creditOffset(budgetId);
+        return offset != -1 ? budgets.getLongVolatile(offset) : NO_CREDIT;
+    }
+
+    @Override
+    public void close()
+    {
+        unmap(mapped);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("BudgetPool [budgetCount=%d, attached=%d]", budgetCount, attached());
+    }
+
+    private int attachedCreditOffset(
+        long budgetId)
+    {
+        final int offset = creditOffset(budgetId);
+        if (offset == -1)
+        {
+            throw new IllegalArgumentException(String.format("budget not attached: budgetId=%d", budgetId));
+        }
+        return offset;
+    }
+
+    private int creditOffset(
+        long budgetId)
+    {
+        int index = Hashing.hash(budgetId, mask);
+        for (int i = 0; i < budgetCount; i++)
+        {
+            final long existingId = budgets.getLongVolatile(index * BUDGET_LENGTH + BUDGET_OFFSET_BUDGET_ID);
+
+            if (existingId == budgetId)
+            {
+                return index * BUDGET_LENGTH + BUDGET_OFFSET_CREDIT;
+            }
+
+            if (existingId == NO_BUDGET_ID)
+            {
+                break;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return -1;
+    }
+}
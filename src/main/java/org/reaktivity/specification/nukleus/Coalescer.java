@@ -0,0 +1,171 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+public final class Coalescer
+{
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final int minimum;
+    private final int maximum;
+    private final long delayNanos;
+    private final MutableDirectBuffer staging;
+    private final FrameHandler handler;
+
+    private int buffered;
+    private long deadline = NO_DEADLINE;
+    private long writes;
+    private long frames;
+    private long bytes;
+
+    @FunctionalInterface
+    public interface FrameHandler
+    {
+        void onFrame(
+            DirectBuffer buffer,
+            int offset,
+            int length);
+    }
+
+    public Coalescer(
+        int minimum,
+        int maximum,
+        long delayNanos,
+        FrameHandler handler)
+    {
+        if (maximum <= 0 || minimum < 0 || minimum > maximum || delayNanos < 0L)
+        {
+            throw new IllegalArgumentException(
+                String.format("invalid coalescer: minimum=%d, maximum=%d, delayNanos=%d", minimum, maximum, delayNanos));
+        }
+
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.delayNanos = delayNanos;
+        this.staging = new UnsafeBuffer(new byte[maximum]);
+        this.handler = handler;
+    }
+
+    public void append(
+        DirectBuffer buffer,
+        int offset,
+        int length,
+        long nowNanos)
+    {
+        writes++;
+
+        if (buffered != 0 && buffered + length > maximum)
+        {
+            flush();
+        }
+
+        if (buffered == 0 && length >= minimum)
+        {
+            while (length > 0)
+            {
+                final int frameLength = Math.min(length, maximum);
+                emit(buffer, offset, frameLength);
+                offset += frameLength;
+                length -= frameLength;
+            }
+        }
+        else
+        {
+            if (buffered == 0)
+            {
+                deadline = nowNanos + delayNanos;
+            }
+
+            staging.putBytes(buffered, buffer, offset, length);
+            buffered += length;
+
+            if (buffered >= minimum)
+            {
+                flush();
+            }
+        }
+    }
+
+    public int poll(
+        long nowNanos)
+    {
+        int workCount = 0;
+
+        if (nowNanos - deadline >= 0L && buffered != 0)
+        {
+            flush();
+            workCount++;
+        }
+
+        return workCount;
+    }
+
+    public void flush()
+    {
+        if (buffered != 0)
+        {
+            emit(staging, 0, buffered);
+            buffered = 0;
+        }
+        deadline = NO_DEADLINE;
+    }
+
+    public int buffered()
+    {
+        return buffered;
+    }
+
+    public long deadline()
+    {
+        return deadline;
+    }
+
+    public long writes()
+    {
+        return writes;
+    }
+
+    public long frames()
+    {
+        return frames;
+    }
+
+    public long bytes()
+    {
+        return bytes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Coalescer [minimum=%d, maximum=%d, buffered=%d, writes=%d, frames=%d, bytes=%d]",
+                minimum, maximum, buffered, writes, frames, bytes);
+    }
+
+    private void emit(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        handler.onFrame(buffer, offset, length);
+        frames++;
+        bytes += length;
+    }
+}
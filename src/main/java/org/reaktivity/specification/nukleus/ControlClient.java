@@ -0,0 +1,113 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2ObjectHashMap;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.broadcast.BroadcastReceiver;
+import org.agrona.concurrent.broadcast.CopyBroadcastReceiver;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+
+public final class ControlClient
+{
+    private static final int FIELD_OFFSET_CORRELATION_ID = 0;
+
+    private final RingBuffer commands;
+    private final CopyBroadcastReceiver responses;
+    private final Long2ObjectHashMap<ResponseHandler> handlers;
+    private final MessageHandler onResponse;
+
+    @FunctionalInterface
+    public interface ResponseHandler
+    {
+        void onResponse(
+            int msgTypeId,
+            DirectBuffer buffer,
+            int index,
+            int length);
+    }
+
+    public ControlClient(
+        RingBuffer commands,
+        AtomicBuffer responses)
+    {
+        this.commands = commands;
+        this.responses = new CopyBroadcastReceiver(new BroadcastReceiver(responses));
+        this.handlers = new Long2ObjectHashMap<>();
+        this.onResponse = this::onResponse;
+    }
+
+    public long nextCorrelationId()
+    {
+        return commands.nextCorrelationId();
+    }
+
+    public boolean submit(
+        int msgTypeId,
+        DirectBuffer command,
+        int index,
+        int length,
+        ResponseHandler handler)
+    {
+        final long correlationId = command.getLong(index + FIELD_OFFSET_CORRELATION_ID);
+        final boolean submitted = commands.write(msgTypeId, command, index, length);
+
+        if (submitted)
+        {
+            handlers.put(correlationId, handler);
+        }
+
+        return submitted;
+    }
+
+    public int poll()
+    {
+        int received = 0;
+        while (responses.receive(onResponse) != 0)
+        {
+            received++;
+        }
+        return received;
+    }
+
+    public int pending()
+    {
+        return handlers.size();
+    }
+
+    private void onResponse(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        if (length >= SIZE_OF_LONG)
+        {
+            final long correlationId = buffer.getLong(index + FIELD_OFFSET_CORRELATION_ID);
+            final ResponseHandler handler = handlers.remove(correlationId);
+
+            if (handler != null)
+            {
+                handler.onResponse(msgTypeId, buffer, index, length);
+            }
+        }
+    }
+}
@@ -15,32 +15,66 @@
  */
 package org.reaktivity.specification.nukleus;
 
-import static java.lang.Long.highestOneBit;
-import static java.lang.Long.numberOfTrailingZeros;
+import static java.lang.Long.numberOfLeadingZeros;
 import static java.lang.ThreadLocal.withInitial;
 import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.ByteOrder.nativeOrder;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.Optional.ofNullable;
 import static org.agrona.BitUtil.SIZE_OF_BYTE;
+import static org.agrona.BitUtil.SIZE_OF_INT;
 import static org.agrona.BitUtil.SIZE_OF_SHORT;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
 import org.agrona.BitUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
 import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Object2IntHashMap;
 import org.agrona.concurrent.UnsafeBuffer;
+import org.kaazing.k3po.lang.el.BytesMatcher;
 import org.kaazing.k3po.lang.el.Function;
 import org.kaazing.k3po.lang.el.spi.FunctionMapperSpi;
-import org.reaktivity.specification.nukleus.internal.types.String16FW;
-import org.reaktivity.specification.nukleus.internal.types.String8FW;
+import org.reaktivity.specification.nukleus.internal.types.Flyweight;
+import org.reaktivity.specification.nukleus.internal.types.stream.AbortFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BatchFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
 import org.reaktivity.specification.nukleus.internal.types.stream.Capability;
+import org.reaktivity.specification.nukleus.internal.types.stream.ChallengeFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.FlushFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.FrameFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.PriorityBeginExFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.ReferenceFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.ResetFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.SegmentFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.SignalFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.WindowFW;
 
 public final class CoreFunctions
 {
-    private static final ThreadLocal<String8FW.Builder> STRING_RW = withInitial(String8FW.Builder::new);
-    private static final ThreadLocal<String16FW.Builder> STRING16_RW = withInitial(String16FW.Builder::new);
-    private static final ThreadLocal<String16FW.Builder> STRING16N_RW = withInitial(() -> new String16FW.Builder(BIG_ENDIAN));
+    private static final ThreadLocal<UnsafeBuffer> ARRAY_RW = withInitial(() -> new UnsafeBuffer(new byte[0]));
+
+    private static final Object2IntHashMap<String> CAPABILITY_MASKS = capabilityMasks();
+
+    private static final ThreadLocal<PriorityBeginExFW.Builder> PRIORITY_BEGIN_EX_RW =
+        withInitial(PriorityBeginExFW.Builder::new);
+
+    private static final ThreadLocal<BeginBuilder> BEGIN_BUILDER = withInitial(BeginBuilder::new);
+    private static final ThreadLocal<DataBuilder> DATA_BUILDER = withInitial(DataBuilder::new);
+    private static final ThreadLocal<BatchBuilder> BATCH_BUILDER = withInitial(BatchBuilder::new);
+    private static final ThreadLocal<ReferenceBuilder> REFERENCE_BUILDER = withInitial(ReferenceBuilder::new);
+    private static final ThreadLocal<EndBuilder> END_BUILDER = withInitial(EndBuilder::new);
+    private static final ThreadLocal<AbortBuilder> ABORT_BUILDER = withInitial(AbortBuilder::new);
+    private static final ThreadLocal<FlushBuilder> FLUSH_BUILDER = withInitial(FlushBuilder::new);
+    private static final ThreadLocal<ResetBuilder> RESET_BUILDER = withInitial(ResetBuilder::new);
+    private static final ThreadLocal<WindowBuilder> WINDOW_BUILDER = withInitial(WindowBuilder::new);
+    private static final ThreadLocal<SignalBuilder> SIGNAL_BUILDER = withInitial(SignalBuilder::new);
+    private static final ThreadLocal<ChallengeBuilder> CHALLENGE_BUILDER = withInitial(ChallengeBuilder::new);
 
     @Function
     public static byte[] fromHex(
@@ -50,24 +84,18 @@ public final class CoreFunctions
     }
 
     @Function
-    public static Random random()
+    public static Random random(
+        long... seed)
     {
-        return ThreadLocalRandom.current();
+        return seed.length != 0 ? RandomSource.seeded(seed[0]) : RandomSource.current();
     }
 
     @Function
     public static byte[] string(
         String text)
     {
-        int capacity = SIZE_OF_BYTE + ofNullable(text).orElse("").length() * 2 + 1;
-        MutableDirectBuffer writeBuffer = new UnsafeBuffer(new byte[capacity]);
-        String8FW string = STRING_RW.get()
-                                   .wrap(writeBuffer, 0, writeBuffer.capacity())
-                                   .set(text, UTF_8)
-                                   .build();
-
-        final byte[] array = new byte[string.sizeof()];
-        string.buffer().getBytes(0, array);
+        final byte[] array = new byte[sizeofString(text)];
+        putString(wrap(array), 0, text);
         return array;
     }
 
@@ -75,15 +103,8 @@ public final class CoreFunctions
     public static byte[] string16(
         String text)
     {
-        int capacity = SIZE_OF_SHORT + ofNullable(text).orElse("").length() * 2 + 1;
-        MutableDirectBuffer writeBuffer = new UnsafeBuffer(new byte[capacity]);
-        String16FW string16 = STRING16_RW.get()
-                                         .wrap(writeBuffer, 0, writeBuffer.capacity())
-                                         .set(text, UTF_8)
-                                         .build();
-
-        final byte[] array = new byte[string16.sizeof()];
-        string16.buffer().getBytes(0, array);
+        final byte[] array = new byte[sizeofString16(text)];
+        putString16(wrap(array), 0, text, nativeOrder());
         return array;
     }
 
@@ -91,15 +112,8 @@ public final class CoreFunctions
     public static byte[] string16n(
         String text)
     {
-        int capacity = SIZE_OF_SHORT + ofNullable(text).orElse("").length() * 2 + 1;
-        MutableDirectBuffer writeBuffer = new UnsafeBuffer(new byte[capacity]);
-        String16FW string16 = STRING16N_RW.get()
-                                          .wrap(writeBuffer, 0, writeBuffer.capacity())
-                                          .set(text, UTF_8)
-                                          .build();
-
-        final byte[] array = new byte[string16.sizeof()];
-        string16.buffer().getBytes(0, array);
+        final byte[] array = new byte[sizeofString16(text)];
+        putString16(wrap(array), 0, text, BIG_ENDIAN);
         return array;
     }
 
@@ -107,28 +121,134 @@ public final class CoreFunctions
     public static byte[] varstring(
         String text)
     {
-        byte[] bytes = text != null ? text.getBytes(UTF_8) : null;
-        return varbytes(bytes);
+        final byte[] array = new byte[sizeofVarstring(text)];
+        putVarstring(wrap(array), 0, text);
+        return array;
     }
 
-    @Function
-    public static byte[] varbytes(
-        byte[] bytes)
+    public static int putString(
+        MutableDirectBuffer buffer,
+        int offset,
+        String text)
     {
-        if (bytes == null)
+        int length = SIZE_OF_BYTE;
+
+        if (text == null)
+        {
+            buffer.putByte(offset, (byte) -1);
+        }
+        else
         {
-            return varuintn(-1L);
+            final int utf8Length = sizeofUtf8(text);
+            if (utf8Length >= 0xff)
+            {
+                throw new IllegalArgumentException(String.format("string too long: %d bytes", utf8Length));
+            }
+
+            buffer.putByte(offset, (byte) utf8Length);
+            length += putUtf8(buffer, offset + length, text);
+        }
+
+        return length;
+    }
+
+    public static int putString16(
+        MutableDirectBuffer buffer,
+        int offset,
+        String text,
+        ByteOrder byteOrder)
+    {
+        int length = SIZE_OF_SHORT;
+
+        if (text == null)
+        {
+            buffer.putShort(offset, (short) -1, byteOrder);
         }
         else
         {
-            byte[] length = varuintn(bytes.length);
+            final int utf8Length = sizeofUtf8(text);
+            if (utf8Length >= 0xffff)
+            {
+                throw new IllegalArgumentException(String.format("string16 too long: %d bytes", utf8Length));
+            }
+
+            buffer.putShort(offset, (short) utf8Length, byteOrder);
+            length += putUtf8(buffer, offset + length, text);
+        }
 
-            byte[] varbytes = new byte[length.length + bytes.length];
-            System.arraycopy(length, 0, varbytes, 0, length.length);
-            System.arraycopy(bytes, 0, varbytes, length.length, bytes.length);
+        return length;
+    }
+
+    public static int putVarstring(
+        MutableDirectBuffer buffer,
+        int offset,
+        String text)
+    {
+        int length = 0;
 
-            return varbytes;
+        if (text == null)
+        {
+            length += putVaruintn(buffer, offset, -1L);
+        }
+        else
+        {
+            length += putVaruintn(buffer, offset, sizeofUtf8(text));
+            length += putUtf8(buffer, offset + length, text);
         }
+
+        return length;
+    }
+
+    public static int sizeofString(
+        String text)
+    {
+        return SIZE_OF_BYTE + (text != null ? sizeofUtf8(text) : 0);
+    }
+
+    public static int sizeofString16(
+        String text)
+    {
+        return SIZE_OF_SHORT + (text != null ? sizeofUtf8(text) : 0);
+    }
+
+    public static int sizeofVarstring(
+        String text)
+    {
+        final int length = text != null ? sizeofUtf8(text) : -1;
+        return sizeofVaruintn(length) + Math.max(length, 0);
+    }
+
+    @Function
+    public static byte[] randomBytes(
+        int length)
+    {
+        return Payloads.randomBytes(length);
+    }
+
+    @Function
+    public static byte[] repeat(
+        byte[] pattern,
+        int length)
+    {
+        return Payloads.repeatBytes(pattern, length);
+    }
+
+    @Function
+    public static byte[] sequence(
+        int length,
+        int seed)
+    {
+        return Payloads.sequenceBytes(length, seed);
+    }
+
+    @Function
+    public static byte[] varbytes(
+        byte[] bytes)
+    {
+        final int length = bytes != null ? bytes.length : -1;
+        final byte[] array = new byte[sizeofVaruintn(length) + Math.max(length, 0)];
+        putVarbytes(wrap(array), 0, bytes);
+        return array;
     }
 
     @Function
@@ -154,107 +274,199 @@ public final class CoreFunctions
         return varbits(bits);
     }
 
+    public static int putVarbytes(
+        MutableDirectBuffer buffer,
+        int offset,
+        byte[] bytes)
+    {
+        int length = 0;
+
+        if (bytes == null)
+        {
+            length += putVaruintn(buffer, offset, -1L);
+        }
+        else
+        {
+            length += putVaruintn(buffer, offset, bytes.length);
+            buffer.putBytes(offset + length, bytes);
+            length += bytes.length;
+        }
+
+        return length;
+    }
+
+    public static int putVaruintn(
+        MutableDirectBuffer buffer,
+        int offset,
+        long nvalue)
+    {
+        return putVaruint(buffer, offset, nvalue + 1);
+    }
+
+    public static int putVaruint(
+        MutableDirectBuffer buffer,
+        int offset,
+        long value)
+    {
+        return putVarbits(buffer, offset, value);
+    }
+
+    public static int putVarint(
+        MutableDirectBuffer buffer,
+        int offset,
+        long value)
+    {
+        final long bits = (value << 1) ^ (value >> 63);
+
+        return putVarbits(buffer, offset, bits);
+    }
+
+    public static int sizeofVaruintn(
+        long nvalue)
+    {
+        return sizeofVaruint(nvalue + 1);
+    }
+
+    public static int sizeofVaruint(
+        long value)
+    {
+        return sizeofVarbits(value);
+    }
+
+    public static int sizeofVarint(
+        long value)
+    {
+        final long bits = (value << 1) ^ (value >> 63);
+
+        return sizeofVarbits(bits);
+    }
+
     private static byte[] varbits(
         long bits)
     {
-        switch (bits != 0L ? (int) Math.ceil((1 + numberOfTrailingZeros(highestOneBit(bits))) / 7.0) : 1)
+        final byte[] array = new byte[sizeofVarbits(bits)];
+        putVarbits(wrap(array), 0, bits);
+        return array;
+    }
+
+    private static int putVarbits(
+        MutableDirectBuffer buffer,
+        int offset,
+        long bits)
+    {
+        int progress = offset;
+        long remaining = bits;
+
+        while ((remaining & ~0x7fL) != 0L)
+        {
+            buffer.putByte(progress++, (byte) (remaining & 0x7f | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.putByte(progress++, (byte) remaining);
+
+        return progress - offset;
+    }
+
+    private static int sizeofVarbits(
+        long bits)
+    {
+        return bits != 0L ? (Long.SIZE - numberOfLeadingZeros(bits) + 6) / 7 : 1;
+    }
+
+    private static int putUtf8(
+        MutableDirectBuffer buffer,
+        int offset,
+        String text)
+    {
+        int progress = offset;
+
+        for (int index = 0; index < text.length(); index++)
         {
-        case 1:
-            return new byte[]
+            final char ch = text.charAt(index);
+
+            if (ch < 0x80)
             {
-                (byte) ((bits >> 0) & 0x7f)
-            };
-        case 2:
-            return new byte[]
+                buffer.putByte(progress++, (byte) ch);
+            }
+            else if (ch < 0x800)
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f)
-            };
-        case 3:
-            return new byte[]
+                buffer.putByte(progress++, (byte) (0xc0 | (ch >> 6)));
+                buffer.putByte(progress++, (byte) (0x80 | (ch & 0x3f)));
+            }
+            else if (!Character.isSurrogate(ch))
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f | 0x80),
-                (byte) ((bits >> 14) & 0x7f)
-            };
-        case 4:
-            return new byte[]
+                buffer.putByte(progress++, (byte) (0xe0 | (ch >> 12)));
+                buffer.putByte(progress++, (byte) (0x80 | ((ch >> 6) & 0x3f)));
+                buffer.putByte(progress++, (byte) (0x80 | (ch & 0x3f)));
+            }
+            else if (isSurrogatePair(text, index))
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f | 0x80),
-                (byte) ((bits >> 14) & 0x7f | 0x80),
-                (byte) ((bits >> 21) & 0x7f)
-            };
-        case 5:
-            return new byte[]
+                final int codePoint = Character.toCodePoint(ch, text.charAt(++index));
+                buffer.putByte(progress++, (byte) (0xf0 | (codePoint >> 18)));
+                buffer.putByte(progress++, (byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.putByte(progress++, (byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.putByte(progress++, (byte) (0x80 | (codePoint & 0x3f)));
+            }
+            else
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f | 0x80),
-                (byte) ((bits >> 14) & 0x7f | 0x80),
-                (byte) ((bits >> 21) & 0x7f | 0x80),
-                (byte) ((bits >> 28) & 0x7f)
-            };
-        case 6:
-            return new byte[]
+                // malformed, replace as String.getBytes(UTF_8) does
+                buffer.putByte(progress++, (byte) '?');
+            }
+        }
+
+        return progress - offset;
+    }
+
+    private static int sizeofUtf8(
+        String text)
+    {
+        int length = 0;
+
+        for (int index = 0; index < text.length(); index++)
+        {
+            final char ch = text.charAt(index);
+
+            if (ch < 0x80)
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f | 0x80),
-                (byte) ((bits >> 14) & 0x7f | 0x80),
-                (byte) ((bits >> 21) & 0x7f | 0x80),
-                (byte) ((bits >> 28) & 0x7f | 0x80),
-                (byte) ((bits >> 35) & 0x7f)
-            };
-        case 7:
-            return new byte[]
+                length += 1;
+            }
+            else if (ch < 0x800)
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f | 0x80),
-                (byte) ((bits >> 14) & 0x7f | 0x80),
-                (byte) ((bits >> 21) & 0x7f | 0x80),
-                (byte) ((bits >> 28) & 0x7f | 0x80),
-                (byte) ((bits >> 35) & 0x7f | 0x80),
-                (byte) ((bits >> 42) & 0x7f)
-            };
-        case 8:
-            return new byte[]
+                length += 2;
+            }
+            else if (!Character.isSurrogate(ch))
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f | 0x80),
-                (byte) ((bits >> 14) & 0x7f | 0x80),
-                (byte) ((bits >> 21) & 0x7f | 0x80),
-                (byte) ((bits >> 28) & 0x7f | 0x80),
-                (byte) ((bits >> 35) & 0x7f | 0x80),
-                (byte) ((bits >> 42) & 0x7f | 0x80),
-                (byte) ((bits >> 49) & 0x7f),
-            };
-        case 9:
-            return new byte[]
+                length += 3;
+            }
+            else if (isSurrogatePair(text, index))
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f | 0x80),
-                (byte) ((bits >> 14) & 0x7f | 0x80),
-                (byte) ((bits >> 21) & 0x7f | 0x80),
-                (byte) ((bits >> 28) & 0x7f | 0x80),
-                (byte) ((bits >> 35) & 0x7f | 0x80),
-                (byte) ((bits >> 42) & 0x7f | 0x80),
-                (byte) ((bits >> 49) & 0x7f | 0x80),
-                (byte) ((bits >> 56) & 0x7f),
-            };
-        default:
-            return new byte[]
+                length += 4;
+                index++;
+            }
+            else
             {
-                (byte) ((bits >> 0) & 0x7f | 0x80),
-                (byte) ((bits >> 7) & 0x7f | 0x80),
-                (byte) ((bits >> 14) & 0x7f | 0x80),
-                (byte) ((bits >> 21) & 0x7f | 0x80),
-                (byte) ((bits >> 28) & 0x7f | 0x80),
-                (byte) ((bits >> 35) & 0x7f | 0x80),
-                (byte) ((bits >> 42) & 0x7f | 0x80),
-                (byte) ((bits >> 49) & 0x7f | 0x80),
-                (byte) ((bits >> 56) & 0x7f | 0x80),
-                (byte) ((bits >> 63) & 0x01)
-            };
+                length += 1;
+            }
         }
+
+        return length;
+    }
+
+    private static boolean isSurrogatePair(
+        String text,
+        int index)
+    {
+        return Character.isHighSurrogate(text.charAt(index)) &&
+            index + 1 < text.length() &&
+            Character.isLowSurrogate(text.charAt(index + 1));
+    }
+
+    private static MutableDirectBuffer wrap(
+        byte[] array)
+    {
+        final UnsafeBuffer buffer = ARRAY_RW.get();
+        buffer.wrap(array);
+        return buffer;
     }
 
     @Function
@@ -265,21 +477,1851 @@ public final class CoreFunctions
         return of(capability, optionalCapabilities);
     }
 
+    @Function
+    public static byte negotiateCapabilities(
+        int offered,
+        int supported)
+    {
+        return (byte) (offered & supported);
+    }
+
     private static byte of(
         String name,
         String... optionalNames)
     {
-        byte capabilityMask = 0x00;
-        capabilityMask |= 1 << Capability.valueOf(name).ordinal();
+        int capabilityMask = capabilityMask(name);
         for (int i = 0; i < optionalNames.length; i++)
         {
-            final int capabilityOrdinal = Capability.valueOf(optionalNames[i]).ordinal();
-            assert capabilityOrdinal < Byte.SIZE;
-            capabilityMask |= 1 << capabilityOrdinal;
+            capabilityMask |= capabilityMask(optionalNames[i]);
+        }
+        return (byte) capabilityMask;
+    }
+
+    private static int capabilityMask(
+        String name)
+    {
+        final int capabilityMask = CAPABILITY_MASKS.getValue(name);
+        if (capabilityMask == 0)
+        {
+            throw new IllegalArgumentException("Unrecognized capability: " + name);
         }
         return capabilityMask;
     }
 
+    private static Object2IntHashMap<String> capabilityMasks()
+    {
+        final Capability[] capabilities = Capability.values();
+        if (capabilities.length > Byte.SIZE)
+        {
+            throw new IllegalStateException("Capability mask exceeds uint8: " + capabilities.length);
+        }
+
+        final Object2IntHashMap<String> capabilityMasks = new Object2IntHashMap<>(0);
+        for (Capability capability : capabilities)
+        {
+            capabilityMasks.put(capability.name(), 1 << capability.ordinal());
+        }
+        return capabilityMasks;
+    }
+
+    @Function
+    public static byte[] priorityBeginEx(
+        int typeId,
+        int weight)
+    {
+        if (weight < 1 || weight > 0xff)
+        {
+            throw new IllegalArgumentException("Weight out of range [1, 255]: " + weight);
+        }
+
+        final byte[] array = new byte[SIZE_OF_INT + SIZE_OF_BYTE];
+        final MutableDirectBuffer buffer = wrap(array);
+        PRIORITY_BEGIN_EX_RW.get().wrap(buffer, 0, buffer.capacity())
+                                  .typeId(typeId)
+                                  .weight(weight)
+                                  .build();
+        return array;
+    }
+
+    @Function
+    public static BeginBuilder begin()
+    {
+        return builder(BEGIN_BUILDER, BeginBuilder::new);
+    }
+
+    @Function
+    public static DataBuilder data()
+    {
+        return builder(DATA_BUILDER, DataBuilder::new);
+    }
+
+    @Function
+    public static BatchBuilder batch()
+    {
+        return builder(BATCH_BUILDER, BatchBuilder::new);
+    }
+
+    @Function
+    public static ReferenceBuilder reference()
+    {
+        return builder(REFERENCE_BUILDER, ReferenceBuilder::new);
+    }
+
+    @Function
+    public static EndBuilder end()
+    {
+        return builder(END_BUILDER, EndBuilder::new);
+    }
+
+    @Function
+    public static AbortBuilder abort()
+    {
+        return builder(ABORT_BUILDER, AbortBuilder::new);
+    }
+
+    @Function
+    public static FlushBuilder flush()
+    {
+        return builder(FLUSH_BUILDER, FlushBuilder::new);
+    }
+
+    @Function
+    public static ResetBuilder reset()
+    {
+        return builder(RESET_BUILDER, ResetBuilder::new);
+    }
+
+    @Function
+    public static WindowBuilder window()
+    {
+        return builder(WINDOW_BUILDER, WindowBuilder::new);
+    }
+
+    @Function
+    public static SignalBuilder signal()
+    {
+        return builder(SIGNAL_BUILDER, SignalBuilder::new);
+    }
+
+    @Function
+    public static ChallengeBuilder challenge()
+    {
+        return builder(CHALLENGE_BUILDER, ChallengeBuilder::new);
+    }
+
+    private static <T extends FrameBuilder<T>> T builder(
+        ThreadLocal<T> builders,
+        Supplier<T> supplier)
+    {
+        final FrameBuilder<T> builder = builders.get();
+        return builder.building ? supplier.get().init() : builder.init();
+    }
+
+    @Function
+    public static BytesMatcher matchVarint(
+        long min,
+        long max)
+    {
+        return new VarintMatcher(true, min, max);
+    }
+
+    @Function
+    public static BytesMatcher matchVaruint(
+        long min,
+        long max)
+    {
+        return new VarintMatcher(false, min, max);
+    }
+
+    @Function
+    public static BytesMatcher matchString(
+        String prefix)
+    {
+        return new StringMatcher(SIZE_OF_BYTE, nativeOrder(), prefix);
+    }
+
+    @Function
+    public static BytesMatcher matchString16(
+        String prefix)
+    {
+        return new StringMatcher(SIZE_OF_SHORT, nativeOrder(), prefix);
+    }
+
+    @Function
+    public static BytesMatcher matchString16n(
+        String prefix)
+    {
+        return new StringMatcher(SIZE_OF_SHORT, BIG_ENDIAN, prefix);
+    }
+
+    @Function
+    public static BeginMatcher matchBegin()
+    {
+        return new BeginMatcher();
+    }
+
+    @Function
+    public static DataMatcher matchData()
+    {
+        return new DataMatcher();
+    }
+
+    @Function
+    public static BatchMatcher matchBatch()
+    {
+        return new BatchMatcher();
+    }
+
+    @Function
+    public static ReferenceMatcher matchReference()
+    {
+        return new ReferenceMatcher();
+    }
+
+    @Function
+    public static EndMatcher matchEnd()
+    {
+        return new EndMatcher();
+    }
+
+    @Function
+    public static AbortMatcher matchAbort()
+    {
+        return new AbortMatcher();
+    }
+
+    @Function
+    public static FlushMatcher matchFlush()
+    {
+        return new FlushMatcher();
+    }
+
+    @Function
+    public static ResetMatcher matchReset()
+    {
+        return new ResetMatcher();
+    }
+
+    @Function
+    public static WindowMatcher matchWindow()
+    {
+        return new WindowMatcher();
+    }
+
+    @Function
+    public static SignalMatcher matchSignal()
+    {
+        return new SignalMatcher();
+    }
+
+    @Function
+    public static ChallengeMatcher matchChallenge()
+    {
+        return new ChallengeMatcher();
+    }
+
+    public abstract static class FrameBuilder<T extends FrameBuilder<T>>
+    {
+        private static final int FRAME_CAPACITY_MIN = 256;
+
+        private final ExpandableArrayBuffer writeBuffer = new ExpandableArrayBuffer(FRAME_CAPACITY_MIN);
+
+        private boolean building;
+        private long routeId;
+        private long streamId;
+        private long sequence;
+        private long acknowledge;
+        private int maximum;
+        private long timestamp;
+        private long traceId;
+        private long authorization;
+
+        public T routeId(
+            long routeId)
+        {
+            this.routeId = routeId;
+            return self();
+        }
+
+        public T streamId(
+            long streamId)
+        {
+            this.streamId = streamId;
+            return self();
+        }
+
+        public T sequence(
+            long sequence)
+        {
+            this.sequence = sequence;
+            return self();
+        }
+
+        public T acknowledge(
+            long acknowledge)
+        {
+            this.acknowledge = acknowledge;
+            return self();
+        }
+
+        public T maximum(
+            int maximum)
+        {
+            this.maximum = maximum;
+            return self();
+        }
+
+        public T timestamp(
+            long timestamp)
+        {
+            this.timestamp = timestamp;
+            return self();
+        }
+
+        public T traceId(
+            long traceId)
+        {
+            this.traceId = traceId;
+            return self();
+        }
+
+        public T authorization(
+            long authorization)
+        {
+            this.authorization = authorization;
+            return self();
+        }
+
+        public abstract int typeId();
+
+        public final byte[] build()
+        {
+            try
+            {
+                writeBuffer.checkLimit(FRAME_CAPACITY_MIN + sizeofExtension() + sizeofPayload());
+                final Flyweight frame = build(writeBuffer, 0, writeBuffer.capacity());
+
+                final byte[] array = new byte[frame.sizeof()];
+                writeBuffer.getBytes(0, array);
+                return array;
+            }
+            finally
+            {
+                building = false;
+            }
+        }
+
+        protected abstract T self();
+
+        protected abstract Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit);
+
+        protected int sizeofPayload()
+        {
+            return 0;
+        }
+
+        protected int sizeofExtension()
+        {
+            return 0;
+        }
+
+        protected T init()
+        {
+            building = true;
+            routeId = 0L;
+            streamId = 0L;
+            sequence = 0L;
+            acknowledge = 0L;
+            maximum = 0;
+            timestamp = 0L;
+            traceId = 0L;
+            authorization = 0L;
+            return self();
+        }
+
+        protected final long routeId()
+        {
+            return routeId;
+        }
+
+        protected final long streamId()
+        {
+            return streamId;
+        }
+
+        protected final long sequence()
+        {
+            return sequence;
+        }
+
+        protected final long acknowledge()
+        {
+            return acknowledge;
+        }
+
+        protected final int maximum()
+        {
+            return maximum;
+        }
+
+        protected final long timestamp()
+        {
+            return timestamp;
+        }
+
+        protected final long traceId()
+        {
+            return traceId;
+        }
+
+        protected final long authorization()
+        {
+            return authorization;
+        }
+    }
+
+    public abstract static class ExtensibleFrameBuilder<T extends ExtensibleFrameBuilder<T>> extends FrameBuilder<T>
+    {
+        private static final byte[] EMPTY_BYTES = new byte[0];
+
+        private final UnsafeBuffer extensionRO = new UnsafeBuffer(EMPTY_BYTES);
+
+        public T extension(
+            byte[] extension)
+        {
+            extensionRO.wrap(extension != null ? extension : EMPTY_BYTES);
+            return self();
+        }
+
+        @Override
+        protected int sizeofExtension()
+        {
+            return extensionRO.capacity();
+        }
+
+        @Override
+        protected T init()
+        {
+            extensionRO.wrap(EMPTY_BYTES);
+            return super.init();
+        }
+
+        protected final DirectBuffer extension()
+        {
+            return extensionRO;
+        }
+    }
+
+    public static final class BeginBuilder extends ExtensibleFrameBuilder<BeginBuilder>
+    {
+        private final BeginFW.Builder beginRW = new BeginFW.Builder();
+
+        private long affinity;
+
+        public BeginBuilder affinity(
+            long affinity)
+        {
+            this.affinity = affinity;
+            return this;
+        }
+
+        @Override
+        public int typeId()
+        {
+            return BeginFW.TYPE_ID;
+        }
+
+        @Override
+        protected BeginBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected BeginBuilder init()
+        {
+            affinity = 0L;
+            return super.init();
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return beginRW.wrap(buffer, offset, limit)
+                          .routeId(routeId())
+                          .streamId(streamId())
+                          .sequence(sequence())
+                          .acknowledge(acknowledge())
+                          .maximum(maximum())
+                          .timestamp(timestamp())
+                          .traceId(traceId())
+                          .authorization(authorization())
+                          .affinity(affinity)
+                          .extension(extension, 0, extension.capacity())
+                          .build();
+        }
+    }
+
+    public static final class DataBuilder extends ExtensibleFrameBuilder<DataBuilder>
+    {
+        private final DataFW.Builder dataRW = new DataFW.Builder();
+
+        private final UnsafeBuffer payloadRO = new UnsafeBuffer(new byte[0]);
+
+        private int flags;
+        private long budgetId;
+        private int reserved;
+        private boolean reservedSet;
+        private byte[] payload;
+
+        public DataBuilder flags(
+            int flags)
+        {
+            this.flags = flags;
+            return this;
+        }
+
+        public DataBuilder budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            return this;
+        }
+
+        public DataBuilder reserved(
+            int reserved)
+        {
+            this.reserved = reserved;
+            this.reservedSet = true;
+            return this;
+        }
+
+        public DataBuilder payload(
+            byte[] payload)
+        {
+            this.payload = payload;
+            return this;
+        }
+
+        @Override
+        public int typeId()
+        {
+            return DataFW.TYPE_ID;
+        }
+
+        @Override
+        protected DataBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected DataBuilder init()
+        {
+            flags = 0x03;
+            budgetId = 0L;
+            reserved = 0;
+            reservedSet = false;
+            payload = null;
+            return super.init();
+        }
+
+        @Override
+        protected int sizeofPayload()
+        {
+            return payload != null ? payload.length : 0;
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            final int length = payload != null ? payload.length : 0;
+            final DataFW.Builder builder = dataRW.wrap(buffer, offset, limit)
+                                                 .routeId(routeId())
+                                                 .streamId(streamId())
+                                                 .sequence(sequence())
+                                                 .acknowledge(acknowledge())
+                                                 .maximum(maximum())
+                                                 .timestamp(timestamp())
+                                                 .traceId(traceId())
+                                                 .authorization(authorization())
+                                                 .flags(flags)
+                                                 .budgetId(budgetId)
+                                                 .reserved(reservedSet ? reserved : length);
+
+            if (payload != null)
+            {
+                payloadRO.wrap(payload);
+                builder.payload(payloadRO, 0, length);
+            }
+
+            return builder.extension(extension, 0, extension.capacity())
+                          .build();
+        }
+    }
+
+    public static final class BatchBuilder extends ExtensibleFrameBuilder<BatchBuilder>
+    {
+        private final BatchFW.Builder batchRW = new BatchFW.Builder();
+        private final SegmentFW.Builder segmentRW = new SegmentFW.Builder();
+
+        private final ExpandableArrayBuffer segmentsBuffer = new ExpandableArrayBuffer();
+        private final UnsafeBuffer valueRO = new UnsafeBuffer(new byte[0]);
+
+        private int flags;
+        private long budgetId;
+        private int reserved;
+        private boolean reservedSet;
+        private int count;
+        private int segmentsLimit;
+        private int valuesLength;
+
+        public BatchBuilder flags(
+            int flags)
+        {
+            this.flags = flags;
+            return this;
+        }
+
+        public BatchBuilder budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            return this;
+        }
+
+        public BatchBuilder reserved(
+            int reserved)
+        {
+            this.reserved = reserved;
+            this.reservedSet = true;
+            return this;
+        }
+
+        public BatchBuilder segment(
+            byte[] value)
+        {
+            valueRO.wrap(value);
+            segmentsBuffer.checkLimit(segmentsLimit + SIZE_OF_INT + value.length);
+            segmentsLimit = segmentRW.wrap(segmentsBuffer, segmentsLimit, segmentsBuffer.capacity())
+                                     .value(valueRO, 0, value.length)
+                                     .build()
+                                     .limit();
+            valuesLength += value.length;
+            count++;
+            return this;
+        }
+
+        @Override
+        public int typeId()
+        {
+            return BatchFW.TYPE_ID;
+        }
+
+        @Override
+        protected BatchBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected BatchBuilder init()
+        {
+            flags = 0x03;
+            budgetId = 0L;
+            reserved = 0;
+            reservedSet = false;
+            count = 0;
+            segmentsLimit = 0;
+            valuesLength = 0;
+            return super.init();
+        }
+
+        @Override
+        protected int sizeofPayload()
+        {
+            return segmentsLimit;
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return batchRW.wrap(buffer, offset, limit)
+                          .routeId(routeId())
+                          .streamId(streamId())
+                          .sequence(sequence())
+                          .acknowledge(acknowledge())
+                          .maximum(maximum())
+                          .timestamp(timestamp())
+                          .traceId(traceId())
+                          .authorization(authorization())
+                          .flags(flags)
+                          .budgetId(budgetId)
+                          .reserved(reservedSet ? reserved : valuesLength)
+                          .count(count)
+                          .segments(segmentsBuffer, 0, segmentsLimit)
+                          .extension(extension, 0, extension.capacity())
+                          .build();
+        }
+    }
+
+    public static final class ReferenceBuilder extends ExtensibleFrameBuilder<ReferenceBuilder>
+    {
+        private final ReferenceFW.Builder referenceRW = new ReferenceFW.Builder();
+
+        private int flags;
+        private long budgetId;
+        private int reserved;
+        private boolean reservedSet;
+        private int poolId;
+        private int slot;
+        private int slotOffset;
+        private int slotLength;
+
+        public ReferenceBuilder flags(
+            int flags)
+        {
+            this.flags = flags;
+            return this;
+        }
+
+        public ReferenceBuilder budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            return this;
+        }
+
+        public ReferenceBuilder reserved(
+            int reserved)
+        {
+            this.reserved = reserved;
+            this.reservedSet = true;
+            return this;
+        }
+
+        public ReferenceBuilder poolId(
+            int poolId)
+        {
+            this.poolId = poolId;
+            return this;
+        }
+
+        public ReferenceBuilder slot(
+            int slot)
+        {
+            this.slot = slot;
+            return this;
+        }
+
+        public ReferenceBuilder slotOffset(
+            int slotOffset)
+        {
+            this.slotOffset = slotOffset;
+            return this;
+        }
+
+        public ReferenceBuilder slotLength(
+            int slotLength)
+        {
+            this.slotLength = slotLength;
+            return this;
+        }
+
+        @Override
+        public int typeId()
+        {
+            return ReferenceFW.TYPE_ID;
+        }
+
+        @Override
+        protected ReferenceBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected ReferenceBuilder init()
+        {
+            flags = 0x03;
+            budgetId = 0L;
+            reserved = 0;
+            reservedSet = false;
+            poolId = 0;
+            slot = 0;
+            slotOffset = 0;
+            slotLength = 0;
+            return super.init();
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return referenceRW.wrap(buffer, offset, limit)
+                              .routeId(routeId())
+                              .streamId(streamId())
+                              .sequence(sequence())
+                              .acknowledge(acknowledge())
+                              .maximum(maximum())
+                              .timestamp(timestamp())
+                              .traceId(traceId())
+                              .authorization(authorization())
+                              .flags(flags)
+                              .budgetId(budgetId)
+                              .reserved(reservedSet ? reserved : slotLength)
+                              .poolId(poolId)
+                              .slot(slot)
+                              .slotOffset(slotOffset)
+                              .slotLength(slotLength)
+                              .extension(extension, 0, extension.capacity())
+                              .build();
+        }
+    }
+
+    public static final class EndBuilder extends ExtensibleFrameBuilder<EndBuilder>
+    {
+        private final EndFW.Builder endRW = new EndFW.Builder();
+
+        @Override
+        public int typeId()
+        {
+            return EndFW.TYPE_ID;
+        }
+
+        @Override
+        protected EndBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return endRW.wrap(buffer, offset, limit)
+                        .routeId(routeId())
+                        .streamId(streamId())
+                        .sequence(sequence())
+                        .acknowledge(acknowledge())
+                        .maximum(maximum())
+                        .timestamp(timestamp())
+                        .traceId(traceId())
+                        .authorization(authorization())
+                        .extension(extension, 0, extension.capacity())
+                        .build();
+        }
+    }
+
+    public static final class AbortBuilder extends ExtensibleFrameBuilder<AbortBuilder>
+    {
+        private final AbortFW.Builder abortRW = new AbortFW.Builder();
+
+        @Override
+        public int typeId()
+        {
+            return AbortFW.TYPE_ID;
+        }
+
+        @Override
+        protected AbortBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return abortRW.wrap(buffer, offset, limit)
+                          .routeId(routeId())
+                          .streamId(streamId())
+                          .sequence(sequence())
+                          .acknowledge(acknowledge())
+                          .maximum(maximum())
+                          .timestamp(timestamp())
+                          .traceId(traceId())
+                          .authorization(authorization())
+                          .extension(extension, 0, extension.capacity())
+                          .build();
+        }
+    }
+
+    public static final class FlushBuilder extends ExtensibleFrameBuilder<FlushBuilder>
+    {
+        private final FlushFW.Builder flushRW = new FlushFW.Builder();
+
+        private long budgetId;
+        private int reserved;
+
+        public FlushBuilder budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            return this;
+        }
+
+        public FlushBuilder reserved(
+            int reserved)
+        {
+            this.reserved = reserved;
+            return this;
+        }
+
+        @Override
+        public int typeId()
+        {
+            return FlushFW.TYPE_ID;
+        }
+
+        @Override
+        protected FlushBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected FlushBuilder init()
+        {
+            budgetId = 0L;
+            reserved = 0;
+            return super.init();
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return flushRW.wrap(buffer, offset, limit)
+                          .routeId(routeId())
+                          .streamId(streamId())
+                          .sequence(sequence())
+                          .acknowledge(acknowledge())
+                          .maximum(maximum())
+                          .timestamp(timestamp())
+                          .traceId(traceId())
+                          .authorization(authorization())
+                          .budgetId(budgetId)
+                          .reserved(reserved)
+                          .extension(extension, 0, extension.capacity())
+                          .build();
+        }
+    }
+
+    public static final class ResetBuilder extends ExtensibleFrameBuilder<ResetBuilder>
+    {
+        private final ResetFW.Builder resetRW = new ResetFW.Builder();
+
+        @Override
+        public int typeId()
+        {
+            return ResetFW.TYPE_ID;
+        }
+
+        @Override
+        protected ResetBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return resetRW.wrap(buffer, offset, limit)
+                          .routeId(routeId())
+                          .streamId(streamId())
+                          .sequence(sequence())
+                          .acknowledge(acknowledge())
+                          .maximum(maximum())
+                          .timestamp(timestamp())
+                          .traceId(traceId())
+                          .authorization(authorization())
+                          .extension(extension, 0, extension.capacity())
+                          .build();
+        }
+    }
+
+    public static final class WindowBuilder extends FrameBuilder<WindowBuilder>
+    {
+        private final WindowFW.Builder windowRW = new WindowFW.Builder();
+
+        private long budgetId;
+        private int padding;
+        private int minimum;
+        private int capabilities;
+
+        public WindowBuilder budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            return this;
+        }
+
+        public WindowBuilder padding(
+            int padding)
+        {
+            this.padding = padding;
+            return this;
+        }
+
+        public WindowBuilder minimum(
+            int minimum)
+        {
+            this.minimum = minimum;
+            return this;
+        }
+
+        public WindowBuilder capabilities(
+            int capabilities)
+        {
+            this.capabilities = capabilities;
+            return this;
+        }
+
+        @Override
+        public int typeId()
+        {
+            return WindowFW.TYPE_ID;
+        }
+
+        @Override
+        protected WindowBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected WindowBuilder init()
+        {
+            budgetId = 0L;
+            padding = 0;
+            minimum = 0;
+            capabilities = 0;
+            return super.init();
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return windowRW.wrap(buffer, offset, limit)
+                           .routeId(routeId())
+                           .streamId(streamId())
+                           .sequence(sequence())
+                           .acknowledge(acknowledge())
+                           .maximum(maximum())
+                           .timestamp(timestamp())
+                           .traceId(traceId())
+                           .authorization(authorization())
+                           .budgetId(budgetId)
+                           .padding(padding)
+                           .minimum(minimum)
+                           .capabilities(capabilities)
+                           .build();
+        }
+    }
+
+    public static final class SignalBuilder extends ExtensibleFrameBuilder<SignalBuilder>
+    {
+        private final SignalFW.Builder signalRW = new SignalFW.Builder();
+
+        private long cancelId;
+        private int signalId;
+
+        public SignalBuilder cancelId(
+            long cancelId)
+        {
+            this.cancelId = cancelId;
+            return this;
+        }
+
+        public SignalBuilder signalId(
+            int signalId)
+        {
+            this.signalId = signalId;
+            return this;
+        }
+
+        @Override
+        public int typeId()
+        {
+            return SignalFW.TYPE_ID;
+        }
+
+        @Override
+        protected SignalBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected SignalBuilder init()
+        {
+            cancelId = 0L;
+            signalId = 0;
+            return super.init();
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return signalRW.wrap(buffer, offset, limit)
+                           .routeId(routeId())
+                           .streamId(streamId())
+                           .sequence(sequence())
+                           .acknowledge(acknowledge())
+                           .maximum(maximum())
+                           .timestamp(timestamp())
+                           .traceId(traceId())
+                           .authorization(authorization())
+                           .cancelId(cancelId)
+                           .signalId(signalId)
+                           .extension(extension, 0, extension.capacity())
+                           .build();
+        }
+    }
+
+    public static final class ChallengeBuilder extends ExtensibleFrameBuilder<ChallengeBuilder>
+    {
+        private final ChallengeFW.Builder challengeRW = new ChallengeFW.Builder();
+
+        @Override
+        public int typeId()
+        {
+            return ChallengeFW.TYPE_ID;
+        }
+
+        @Override
+        protected ChallengeBuilder self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight build(
+            MutableDirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            final DirectBuffer extension = extension();
+            return challengeRW.wrap(buffer, offset, limit)
+                              .routeId(routeId())
+                              .streamId(streamId())
+                              .sequence(sequence())
+                              .acknowledge(acknowledge())
+                              .maximum(maximum())
+                              .timestamp(timestamp())
+                              .traceId(traceId())
+                              .authorization(authorization())
+                              .extension(extension, 0, extension.capacity())
+                              .build();
+        }
+    }
+
+    public static final class VarintMatcher implements BytesMatcher
+    {
+        private final boolean zigzag;
+        private final long min;
+        private final long max;
+
+        private VarintMatcher(
+            boolean zigzag,
+            long min,
+            long max)
+        {
+            this.zigzag = zigzag;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        public Object match(
+            ByteBuffer byteBuf) throws Exception
+        {
+            final int limit = byteBuf.limit();
+
+            int progress = byteBuf.position();
+            long bits = 0L;
+            int shift = 0;
+            byte octet;
+
+            do
+            {
+                if (progress == limit)
+                {
+                    return null;
+                }
+
+                if (shift >= Long.SIZE)
+                {
+                    throw new Exception("varint exceeds 64 bits");
+                }
+
+                octet = byteBuf.get(progress++);
+                bits |= (long) (octet & 0x7f) << shift;
+                shift += 7;
+            }
+            while ((octet & 0x80) != 0);
+
+            final long value = zigzag ? (bits >>> 1) ^ -(bits & 1L) : bits;
+            if (value < min || value > max)
+            {
+                throw new Exception(String.format("%d not in range [%d, %d]", value, min, max));
+            }
+
+            byteBuf.position(progress);
+            return this;
+        }
+    }
+
+    public static final class StringMatcher implements BytesMatcher
+    {
+        private final int sizeofLength;
+        private final ByteOrder byteOrder;
+        private final byte[] prefix;
+
+        private StringMatcher(
+            int sizeofLength,
+            ByteOrder byteOrder,
+            String prefix)
+        {
+            this.sizeofLength = sizeofLength;
+            this.byteOrder = byteOrder;
+            this.prefix = prefix != null ? prefix.getBytes(UTF_8) : null;
+        }
+
+        @Override
+        public Object match(
+            ByteBuffer byteBuf) throws Exception
+        {
+            final int offset = byteBuf.position();
+            if (byteBuf.limit() - offset < sizeofLength)
+            {
+                return null;
+            }
+
+            final int length = sizeofLength == SIZE_OF_BYTE ? byteBuf.get(offset) & 0xff : getUnsignedShort(byteBuf, offset);
+            final int nullLength = sizeofLength == SIZE_OF_BYTE ? 0xff : 0xffff;
+
+            if (length == nullLength || prefix == null)
+            {
+                if (length != nullLength || prefix != null)
+                {
+                    throw new Exception(String.format("string length %d does not match prefix", length));
+                }
+
+                byteBuf.position(offset + sizeofLength);
+                return this;
+            }
+
+            final int valueOffset = offset + sizeofLength;
+            if (byteBuf.limit() - valueOffset < length)
+            {
+                return null;
+            }
+
+            if (length < prefix.length)
+            {
+                throw new Exception(String.format("string length %d shorter than prefix", length));
+            }
+
+            for (int index = 0; index < prefix.length; index++)
+            {
+                if (byteBuf.get(valueOffset + index) != prefix[index])
+                {
+                    throw new Exception(String.format("string differs from prefix at byte %d", index));
+                }
+            }
+
+            byteBuf.position(valueOffset + length);
+            return this;
+        }
+
+        private int getUnsignedShort(
+            ByteBuffer byteBuf,
+            int offset)
+        {
+            final short value = byteBuf.getShort(offset);
+            return (byteBuf.order() == byteOrder ? value : Short.reverseBytes(value)) & 0xffff;
+        }
+    }
+
+    public abstract static class FrameMatcher<T extends FrameMatcher<T>> implements BytesMatcher
+    {
+        private final UnsafeBuffer bufferRO = new UnsafeBuffer(new byte[0]);
+        private final FrameFW frameRO = new FrameFW();
+
+        private long routeId;
+        private long routeIdMask;
+        private long streamId;
+        private long streamIdMask;
+        private long traceId;
+        private long traceIdMask;
+        private long authorization;
+        private long authorizationMask;
+
+        public T routeId(
+            long routeId)
+        {
+            this.routeId = routeId;
+            this.routeIdMask = -1L;
+            return self();
+        }
+
+        public T streamId(
+            long streamId)
+        {
+            this.streamId = streamId;
+            this.streamIdMask = -1L;
+            return self();
+        }
+
+        public T traceId(
+            long traceId,
+            long mask)
+        {
+            this.traceId = traceId;
+            this.traceIdMask = mask;
+            return self();
+        }
+
+        public T authorization(
+            long authorization)
+        {
+            this.authorization = authorization;
+            this.authorizationMask = -1L;
+            return self();
+        }
+
+        @Override
+        public final Object match(
+            ByteBuffer byteBuf) throws Exception
+        {
+            if (!byteBuf.hasRemaining())
+            {
+                return null;
+            }
+
+            bufferRO.wrap(byteBuf);
+            final int offset = byteBuf.position();
+            final int limit = byteBuf.limit();
+
+            final Flyweight frame = tryWrap(bufferRO, offset, limit);
+            if (frame == null)
+            {
+                return null;
+            }
+
+            final FrameFW header = frameRO.wrap(bufferRO, offset, limit);
+            if (!matches(header.routeId(), routeId, routeIdMask) ||
+                !matches(header.streamId(), streamId, streamIdMask) ||
+                !matches(header.traceId(), traceId, traceIdMask) ||
+                !matches(header.authorization(), authorization, authorizationMask) ||
+                !matchesFrame())
+            {
+                throw new Exception(frame.toString());
+            }
+
+            byteBuf.position(frame.limit());
+            return frame;
+        }
+
+        protected abstract T self();
+
+        protected abstract Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit);
+
+        protected boolean matchesFrame()
+        {
+            return true;
+        }
+
+        protected static boolean matches(
+            long actual,
+            long expected,
+            long mask)
+        {
+            return (actual & mask) == (expected & mask);
+        }
+    }
+
+    public static final class BeginMatcher extends FrameMatcher<BeginMatcher>
+    {
+        private final BeginFW beginRO = new BeginFW();
+
+        private long affinity;
+        private long affinityMask;
+
+        public BeginMatcher affinity(
+            long affinity)
+        {
+            this.affinity = affinity;
+            this.affinityMask = -1L;
+            return this;
+        }
+
+        @Override
+        protected BeginMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return beginRO.tryWrap(buffer, offset, limit);
+        }
+
+        @Override
+        protected boolean matchesFrame()
+        {
+            return matches(beginRO.affinity(), affinity, affinityMask);
+        }
+    }
+
+    public static final class DataMatcher extends FrameMatcher<DataMatcher>
+    {
+        private final DataFW dataRO = new DataFW();
+
+        private int flags;
+        private int flagsMask;
+        private long budgetId;
+        private long budgetIdMask;
+
+        public DataMatcher flags(
+            int mask)
+        {
+            this.flags = mask;
+            this.flagsMask = mask;
+            return this;
+        }
+
+        public DataMatcher budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            this.budgetIdMask = -1L;
+            return this;
+        }
+
+        @Override
+        protected DataMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return dataRO.tryWrap(buffer, offset, limit);
+        }
+
+        @Override
+        protected boolean matchesFrame()
+        {
+            return matches(dataRO.flags(), flags, flagsMask) &&
+                   matches(dataRO.budgetId(), budgetId, budgetIdMask);
+        }
+    }
+
+    public static final class BatchMatcher extends FrameMatcher<BatchMatcher>
+    {
+        private final BatchFW batchRO = new BatchFW();
+
+        private int flags;
+        private int flagsMask;
+        private long budgetId;
+        private long budgetIdMask;
+        private int count;
+        private int countMask;
+
+        public BatchMatcher flags(
+            int mask)
+        {
+            this.flags = mask;
+            this.flagsMask = mask;
+            return this;
+        }
+
+        public BatchMatcher budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            this.budgetIdMask = -1L;
+            return this;
+        }
+
+        public BatchMatcher count(
+            int count)
+        {
+            this.count = count;
+            this.countMask = -1;
+            return this;
+        }
+
+        @Override
+        protected BatchMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return batchRO.tryWrap(buffer, offset, limit);
+        }
+
+        @Override
+        protected boolean matchesFrame()
+        {
+            return matches(batchRO.flags(), flags, flagsMask) &&
+                   matches(batchRO.budgetId(), budgetId, budgetIdMask) &&
+                   matches(batchRO.count(), count, countMask);
+        }
+    }
+
+    public static final class ReferenceMatcher extends FrameMatcher<ReferenceMatcher>
+    {
+        private final ReferenceFW referenceRO = new ReferenceFW();
+
+        private int poolId;
+        private int poolIdMask;
+        private int slot;
+        private int slotMask;
+        private int slotLength;
+        private int slotLengthMask;
+
+        public ReferenceMatcher poolId(
+            int poolId)
+        {
+            this.poolId = poolId;
+            this.poolIdMask = -1;
+            return this;
+        }
+
+        public ReferenceMatcher slot(
+            int slot)
+        {
+            this.slot = slot;
+            this.slotMask = -1;
+            return this;
+        }
+
+        public ReferenceMatcher slotLength(
+            int slotLength)
+        {
+            this.slotLength = slotLength;
+            this.slotLengthMask = -1;
+            return this;
+        }
+
+        @Override
+        protected ReferenceMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return referenceRO.tryWrap(buffer, offset, limit);
+        }
+
+        @Override
+        protected boolean matchesFrame()
+        {
+            return matches(referenceRO.poolId(), poolId, poolIdMask) &&
+                   matches(referenceRO.slot(), slot, slotMask) &&
+                   matches(referenceRO.slotLength(), slotLength, slotLengthMask);
+        }
+    }
+
+    public static final class EndMatcher extends FrameMatcher<EndMatcher>
+    {
+        private final EndFW endRO = new EndFW();
+
+        @Override
+        protected EndMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return endRO.tryWrap(buffer, offset, limit);
+        }
+    }
+
+    public static final class AbortMatcher extends FrameMatcher<AbortMatcher>
+    {
+        private final AbortFW abortRO = new AbortFW();
+
+        @Override
+        protected AbortMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return abortRO.tryWrap(buffer, offset, limit);
+        }
+    }
+
+    public static final class FlushMatcher extends FrameMatcher<FlushMatcher>
+    {
+        private final FlushFW flushRO = new FlushFW();
+
+        private long budgetId;
+        private long budgetIdMask;
+
+        public FlushMatcher budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            this.budgetIdMask = -1L;
+            return this;
+        }
+
+        @Override
+        protected FlushMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return flushRO.tryWrap(buffer, offset, limit);
+        }
+
+        @Override
+        protected boolean matchesFrame()
+        {
+            return matches(flushRO.budgetId(), budgetId, budgetIdMask);
+        }
+    }
+
+    public static final class ResetMatcher extends FrameMatcher<ResetMatcher>
+    {
+        private final ResetFW resetRO = new ResetFW();
+
+        @Override
+        protected ResetMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return resetRO.tryWrap(buffer, offset, limit);
+        }
+    }
+
+    public static final class WindowMatcher extends FrameMatcher<WindowMatcher>
+    {
+        private final WindowFW windowRO = new WindowFW();
+
+        private long budgetId;
+        private long budgetIdMask;
+        private int padding;
+        private int paddingMask;
+        private int minimum;
+        private int minimumMask;
+        private int capabilities;
+        private int capabilitiesMask;
+
+        public WindowMatcher budgetId(
+            long budgetId)
+        {
+            this.budgetId = budgetId;
+            this.budgetIdMask = -1L;
+            return this;
+        }
+
+        public WindowMatcher padding(
+            int padding)
+        {
+            this.padding = padding;
+            this.paddingMask = -1;
+            return this;
+        }
+
+        public WindowMatcher minimum(
+            int minimum)
+        {
+            this.minimum = minimum;
+            this.minimumMask = -1;
+            return this;
+        }
+
+        public WindowMatcher capabilities(
+            int capabilities)
+        {
+            this.capabilities = capabilities;
+            this.capabilitiesMask = -1;
+            return this;
+        }
+
+        @Override
+        protected WindowMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return windowRO.tryWrap(buffer, offset, limit);
+        }
+
+        @Override
+        protected boolean matchesFrame()
+        {
+            return matches(windowRO.budgetId(), budgetId, budgetIdMask) &&
+                   matches(windowRO.padding(), padding, paddingMask) &&
+                   matches(windowRO.minimum(), minimum, minimumMask) &&
+                   matches(windowRO.capabilities(), capabilities, capabilitiesMask);
+        }
+    }
+
+    public static final class SignalMatcher extends FrameMatcher<SignalMatcher>
+    {
+        private final SignalFW signalRO = new SignalFW();
+
+        private long cancelId;
+        private long cancelIdMask;
+        private int signalId;
+        private int signalIdMask;
+
+        public SignalMatcher cancelId(
+            long cancelId)
+        {
+            this.cancelId = cancelId;
+            this.cancelIdMask = -1L;
+            return this;
+        }
+
+        public SignalMatcher signalId(
+            int signalId)
+        {
+            this.signalId = signalId;
+            this.signalIdMask = -1;
+            return this;
+        }
+
+        @Override
+        protected SignalMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return signalRO.tryWrap(buffer, offset, limit);
+        }
+
+        @Override
+        protected boolean matchesFrame()
+        {
+            return matches(signalRO.cancelId(), cancelId, cancelIdMask) &&
+                   matches(signalRO.signalId(), signalId, signalIdMask);
+        }
+    }
+
+    public static final class ChallengeMatcher extends FrameMatcher<ChallengeMatcher>
+    {
+        private final ChallengeFW challengeRO = new ChallengeFW();
+
+        @Override
+        protected ChallengeMatcher self()
+        {
+            return this;
+        }
+
+        @Override
+        protected Flyweight tryWrap(
+            DirectBuffer buffer,
+            int offset,
+            int limit)
+        {
+            return challengeRO.tryWrap(buffer, offset, limit);
+        }
+    }
+
     public static class Mapper extends FunctionMapperSpi.Reflective
     {
         public Mapper()
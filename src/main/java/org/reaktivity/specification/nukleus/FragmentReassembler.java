@@ -0,0 +1,196 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.agrona.collections.Hashing.DEFAULT_LOAD_FACTOR;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2LongHashMap;
+
+public final class FragmentReassembler
+{
+    public static final int FLAG_FIN = 0x01;
+    public static final int FLAG_INIT = 0x02;
+    public static final int FLAG_INCOMPLETE = 0x04;
+
+    private static final long NO_FRAGMENTS = -1L;
+
+    private final SlabPool slabs;
+    private final MessageHandler handler;
+    private final Long2LongHashMap fragments;
+
+    private long messages;
+    private long rejected;
+
+    @FunctionalInterface
+    public interface MessageHandler
+    {
+        void onMessage(
+            long streamId,
+            DirectBuffer buffer,
+            int offset,
+            int length);
+    }
+
+    public FragmentReassembler(
+        SlabPool slabs,
+        MessageHandler handler)
+    {
+        this.slabs = slabs;
+        this.handler = handler;
+        this.fragments = new Long2LongHashMap(slabs.slotCount(), DEFAULT_LOAD_FACTOR, NO_FRAGMENTS);
+    }
+
+    public boolean onData(
+        long streamId,
+        int flags,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        assert streamId != SlabPool.NO_OWNER;
+
+        final boolean init = (flags & FLAG_INIT) != 0;
+        final boolean fin = (flags & FLAG_FIN) != 0;
+
+        long fragment = fragments.get(streamId);
+
+        if (init && fragment != NO_FRAGMENTS)
+        {
+            release(streamId, fragment);
+            fragment = NO_FRAGMENTS;
+        }
+
+        if ((flags & FLAG_INCOMPLETE) != 0)
+        {
+            if (fragment != NO_FRAGMENTS)
+            {
+                release(streamId, fragment);
+            }
+            return true;
+        }
+
+        if (init && fin)
+        {
+            deliver(streamId, buffer, offset, length);
+            return true;
+        }
+
+        if (init)
+        {
+            final int slot = slabs.acquire(streamId);
+            if (slot == SlabPool.NO_SLOT)
+            {
+                rejected++;
+                return false;
+            }
+            fragment = fragment(slot, 0);
+        }
+        else if (fragment == NO_FRAGMENTS)
+        {
+            rejected++;
+            return false;
+        }
+
+        final int slot = slot(fragment);
+        final int progress = progress(fragment);
+
+        if (progress + length > slabs.slotCapacity())
+        {
+            release(streamId, fragment);
+            rejected++;
+            return false;
+        }
+
+        final MutableDirectBuffer slab = slabs.buffer(slot);
+        slab.putBytes(progress, buffer, offset, length);
+
+        if (fin)
+        {
+            deliver(streamId, slab, 0, progress + length);
+            release(streamId, fragment);
+        }
+        else
+        {
+            fragments.put(streamId, fragment(slot, progress + length));
+        }
+
+        return true;
+    }
+
+    public void abort(
+        long streamId)
+    {
+        final long fragment = fragments.get(streamId);
+        if (fragment != NO_FRAGMENTS)
+        {
+            release(streamId, fragment);
+        }
+    }
+
+    public int pending()
+    {
+        return fragments.size();
+    }
+
+    public long messages()
+    {
+        return messages;
+    }
+
+    public long rejected()
+    {
+        return rejected;
+    }
+
+    private void deliver(
+        long streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        handler.onMessage(streamId, buffer, offset, length);
+        messages++;
+    }
+
+    private void release(
+        long streamId,
+        long fragment)
+    {
+        slabs.release(slot(fragment), streamId);
+        fragments.remove(streamId);
+    }
+
+    private static long fragment(
+        int slot,
+        int progress)
+    {
+        return (long) slot << 32 | progress;
+    }
+
+    private static int slot(
+        long fragment)
+    {
+        return (int) (fragment >>> 32);
+    }
+
+    private static int progress(
+        long fragment)
+    {
+        return (int) fragment;
+    }
+}
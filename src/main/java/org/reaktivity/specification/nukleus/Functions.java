@@ -15,30 +15,34 @@
  */
 package org.reaktivity.specification.nukleus;
 
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
 import static org.agrona.BitUtil.align;
-import static org.agrona.IoUtil.createEmptyFile;
+import static org.agrona.IoUtil.ensureDirectoryExists;
 import static org.agrona.IoUtil.mapExistingFile;
 import static org.agrona.IoUtil.unmap;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.nio.MappedByteBuffer;
-import java.util.Random;
 
 import org.agrona.BitUtil;
-import org.agrona.CloseHelper;
+import org.agrona.LangUtil;
+import org.agrona.UnsafeAccess;
+import org.agrona.collections.Object2IntHashMap;
 import org.agrona.concurrent.AtomicBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.agrona.concurrent.broadcast.BroadcastBufferDescriptor;
 import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
 import org.agrona.concurrent.ringbuffer.RingBuffer;
 import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.agrona.concurrent.status.CountersManager;
+import org.agrona.concurrent.status.CountersReader;
 import org.kaazing.k3po.lang.el.Function;
 import org.kaazing.k3po.lang.el.spi.FunctionMapperSpi;
 
 public final class Functions
 {
-    private static final Random RANDOM = new Random();
-
     private static final int CONTROL_VERSION = 1;
 
     private static final int FIELD_OFFSET_VERSION = 0;
@@ -59,8 +63,14 @@ public final class Functions
             FIELD_OFFSET_COUNTER_LABELS_BUFFER_LENGTH + FIELD_SIZE_COUNTER_LABELS_BUFFER_LENGTH;
     private static final int FIELD_SIZE_COUNTER_VALUES_BUFFER_LENGTH = BitUtil.SIZE_OF_INT;
 
+    private static final int FIELD_OFFSET_ALIGNMENT =
+            FIELD_OFFSET_COUNTER_VALUES_BUFFER_LENGTH + FIELD_SIZE_COUNTER_VALUES_BUFFER_LENGTH;
+    private static final int FIELD_SIZE_ALIGNMENT = BitUtil.SIZE_OF_INT;
+
     private static final int END_OF_META_DATA_OFFSET = align(
-            FIELD_OFFSET_COUNTER_VALUES_BUFFER_LENGTH + FIELD_SIZE_COUNTER_VALUES_BUFFER_LENGTH, BitUtil.CACHE_LINE_LENGTH);
+            FIELD_OFFSET_ALIGNMENT + FIELD_SIZE_ALIGNMENT, BitUtil.CACHE_LINE_LENGTH);
+
+    private static final int PAGE_SIZE = UnsafeAccess.UNSAFE.pageSize();
 
     @Function
     public static Helper directory(
@@ -69,22 +79,92 @@ public final class Functions
         return new Helper(new File(configPath));
     }
 
+    @Function
+    public static SlabPool newSlabPool(
+        String filename,
+        int poolId,
+        int slotCount,
+        int slotCapacity)
+    {
+        return SlabPool.create(new File(filename), poolId, slotCount, slotCapacity);
+    }
+
+    @Function
+    public static SlabPool slabPool(
+        String filename)
+    {
+        return SlabPool.map(new File(filename));
+    }
+
+    @Function
+    public static BudgetPool newBudgetPool(
+        String filename,
+        int budgetCount)
+    {
+        return BudgetPool.create(new File(filename), budgetCount);
+    }
+
+    @Function
+    public static BudgetPool budgetPool(
+        String filename)
+    {
+        return BudgetPool.map(new File(filename));
+    }
+
+    @Function
+    public static Long newBudget(
+        BudgetPool budgets,
+        long budgetId,
+        long credit)
+    {
+        if (!budgets.attach(budgetId))
+        {
+            throw new IllegalStateException(String.format("budget already attached: budgetId=%d", budgetId));
+        }
+
+        budgets.credit(budgetId, credit);
+        return budgetId;
+    }
+
+    @Function
+    public static Long detachBudget(
+        BudgetPool budgets,
+        long budgetId)
+    {
+        return budgets.detach(budgetId);
+    }
+
+    @Function
+    public static Long counter(
+        Helper.ControlHelper control,
+        String name)
+    {
+        return control.counter(name);
+    }
+
     @Function
     public static Long newReferenceId()
     {
-        return RANDOM.nextLong();
+        return IdAllocator.current().nextId();
     }
 
     @Function
     public static Long newStreamId()
     {
-        return RANDOM.nextLong();
+        return IdAllocator.current().nextInitialId();
+    }
+
+    @Function
+    public static Long newReplyId(
+        long initialId)
+    {
+        return IdAllocator.replyId(initialId);
     }
 
     @Function
     public static Long newCorrelationId()
     {
-        return RANDOM.nextLong();
+        return IdAllocator.current().nextId();
     }
 
     public static final class Helper
@@ -93,6 +173,10 @@ public final class Functions
 
         private int ringCapacity;
         private int broadcastCapacity;
+        private int counterLabelsCapacity;
+        private int counterValuesCapacity;
+        private boolean pageAligned;
+        private boolean prefault;
 
         private Helper(
             File configDirectory)
@@ -109,28 +193,67 @@ public final class Functions
             return this;
         }
 
+        public Helper controlCapacity(
+            int ringCapacity,
+            int broadcastCapacity,
+            int counterLabelsCapacity,
+            int counterValuesCapacity)
+        {
+            this.ringCapacity = ringCapacity;
+            this.broadcastCapacity = broadcastCapacity;
+            this.counterLabelsCapacity = counterLabelsCapacity;
+            this.counterValuesCapacity = counterValuesCapacity;
+            return this;
+        }
+
+        public Helper controlPageAligned(
+            boolean pageAligned)
+        {
+            this.pageAligned = pageAligned;
+            return this;
+        }
+
+        public Helper controlPrefault(
+            boolean prefault)
+        {
+            this.prefault = prefault;
+            return this;
+        }
+
         public ControlHelper controlNew()
         {
-            return new ControlHelper.Eager(true, new File(configDirectory, "control"), ringCapacity, broadcastCapacity);
+            return new ControlHelper.Eager(true, new File(configDirectory, "control"), ringCapacity, broadcastCapacity,
+                    counterLabelsCapacity, counterValuesCapacity, pageAligned, prefault);
         }
 
         public ControlHelper control()
         {
-            return new ControlHelper.Deferred(false, new File(configDirectory, "control"), ringCapacity, broadcastCapacity);
+            return new ControlHelper.Deferred(false, new File(configDirectory, "control"), ringCapacity, broadcastCapacity,
+                    counterLabelsCapacity, counterValuesCapacity, pageAligned, prefault);
         }
 
         public abstract static class ControlHelper implements AutoCloseable
         {
             private long correlationId;
+            private RingBuffer commands;
+            private CountersManager counters;
+            private Object2IntHashMap<String> counterIds;
 
             public abstract AtomicBuffer getNukleus();
 
             public abstract AtomicBuffer getController();
 
+            public abstract AtomicBuffer getCounterLabels();
+
+            public abstract AtomicBuffer getCounterValues();
+
+            public abstract int commandBufferOffset();
+
+            public abstract int responseBufferOffset();
+
             public final long nextCorrelationId()
             {
-                RingBuffer ring = new ManyToOneRingBuffer(getNukleus());
-                correlationId = ring.nextCorrelationId();
+                correlationId = commands().nextCorrelationId();
                 return correlationId;
             }
 
@@ -139,61 +262,125 @@ public final class Functions
                 return correlationId;
             }
 
+            public final RingBuffer commands()
+            {
+                if (commands == null)
+                {
+                    commands = new ManyToOneRingBuffer(getNukleus());
+                }
+                return commands;
+            }
+
+            public final ControlClient client()
+            {
+                return new ControlClient(commands(), getController());
+            }
+
+            public final CountersManager counters()
+            {
+                if (counters == null)
+                {
+                    counters = new CountersManager(getCounterLabels(), getCounterValues());
+                    counterIds = new Object2IntHashMap<>(CountersReader.NULL_COUNTER_ID);
+                }
+                return counters;
+            }
+
+            public final long counter(
+                String name)
+            {
+                final CountersManager counters = counters();
+
+                int counterId = counterIds.getValue(name);
+                if (counterId == CountersReader.NULL_COUNTER_ID ||
+                    counters.getCounterState(counterId) != CountersReader.RECORD_ALLOCATED ||
+                    !name.equals(counters.getCounterLabel(counterId)))
+                {
+                    counterId = findCounterId(name);
+                }
+
+                return counterId != CountersReader.NULL_COUNTER_ID ? counters.getCounterValue(counterId) : 0L;
+            }
+
+            private int findCounterId(
+                String name)
+            {
+                counterIds.clear();
+                counters.forEach((id, label) -> counterIds.putIfAbsent(label, id));
+                return counterIds.getValue(name);
+            }
+
             private static final class Eager extends ControlHelper
             {
                 private final MappedByteBuffer buffer;
                 private final AtomicBuffer nukleus;
                 private final AtomicBuffer controller;
+                private final AtomicBuffer counterLabels;
+                private final AtomicBuffer counterValues;
+                private final int commandBufferOffset;
+                private final int responseBufferOffset;
 
                 private Eager(
                     boolean overwrite,
                     File location,
                     int commandBufferCapacity,
-                    int responseBufferCapacity)
+                    int responseBufferCapacity,
+                    int counterLabelsBufferCapacity,
+                    int counterValuesBufferCapacity,
+                    boolean pageAligned,
+                    boolean prefault)
                 {
                     File controlFile = location.getAbsoluteFile();
-                    int counterLabelsBufferCapacity = 0;
-                    int counterValuesBufferCapacity = 0;
+                    int alignment = pageAligned ? PAGE_SIZE : 1;
 
                     if (overwrite)
                     {
-                        int commandBufferLength = commandBufferCapacity + RingBufferDescriptor.TRAILER_LENGTH;
-                        int responseBufferLength = responseBufferCapacity + BroadcastBufferDescriptor.TRAILER_LENGTH;
-                        int counterLabelsBufferLength = counterLabelsBufferCapacity;
-                        int counterValuesBufferLength = counterValuesBufferCapacity;
-
-                        CloseHelper.close(createEmptyFile(controlFile, END_OF_META_DATA_OFFSET +
-                                commandBufferLength + responseBufferLength +
-                                counterLabelsBufferLength + counterValuesBufferLength));
-
-                        MappedByteBuffer metadata = mapExistingFile(controlFile, "metadata", 0, END_OF_META_DATA_OFFSET);
-                        metadata.putInt(FIELD_OFFSET_VERSION, CONTROL_VERSION);
-                        metadata.putInt(FIELD_OFFSET_COMMAND_BUFFER_LENGTH, commandBufferCapacity);
-                        metadata.putInt(FIELD_OFFSET_RESPONSE_BUFFER_LENGTH, responseBufferCapacity);
-                        metadata.putInt(FIELD_OFFSET_COUNTER_LABELS_BUFFER_LENGTH, counterLabelsBufferCapacity);
-                        metadata.putInt(FIELD_OFFSET_COUNTER_VALUES_BUFFER_LENGTH, counterValuesBufferCapacity);
-                        unmap(metadata);
+                        int fileLength = align(counterValuesBufferOffset(alignment, commandBufferCapacity, responseBufferCapacity,
+                                counterLabelsBufferCapacity) + counterValuesBufferCapacity, alignment);
+
+                        this.buffer = mapNewControlFile(controlFile, fileLength);
+                        buffer.putInt(FIELD_OFFSET_VERSION, CONTROL_VERSION);
+                        buffer.putInt(FIELD_OFFSET_COMMAND_BUFFER_LENGTH, commandBufferCapacity);
+                        buffer.putInt(FIELD_OFFSET_RESPONSE_BUFFER_LENGTH, responseBufferCapacity);
+                        buffer.putInt(FIELD_OFFSET_COUNTER_LABELS_BUFFER_LENGTH, counterLabelsBufferCapacity);
+                        buffer.putInt(FIELD_OFFSET_COUNTER_VALUES_BUFFER_LENGTH, counterValuesBufferCapacity);
+                        buffer.putInt(FIELD_OFFSET_ALIGNMENT, alignment);
+
+                        if (prefault)
+                        {
+                            for (int offset = 0; offset < fileLength; offset += PAGE_SIZE)
+                            {
+                                buffer.put(offset, buffer.get(offset));
+                            }
+                        }
                     }
                     else
                     {
-                        MappedByteBuffer metadata = mapExistingFile(controlFile, "metadata", 0, END_OF_META_DATA_OFFSET);
-                        assert CONTROL_VERSION == metadata.getInt(FIELD_OFFSET_VERSION);
-                        commandBufferCapacity = metadata.getInt(FIELD_OFFSET_COMMAND_BUFFER_LENGTH);
-                        responseBufferCapacity = metadata.getInt(FIELD_OFFSET_RESPONSE_BUFFER_LENGTH);
-                        counterLabelsBufferCapacity = metadata.getInt(FIELD_OFFSET_COUNTER_LABELS_BUFFER_LENGTH);
-                        counterValuesBufferCapacity = metadata.getInt(FIELD_OFFSET_COUNTER_VALUES_BUFFER_LENGTH);
-                        unmap(metadata);
+                        this.buffer = mapExistingFile(controlFile, "control");
+                        assert CONTROL_VERSION == buffer.getInt(FIELD_OFFSET_VERSION);
+                        commandBufferCapacity = buffer.getInt(FIELD_OFFSET_COMMAND_BUFFER_LENGTH);
+                        responseBufferCapacity = buffer.getInt(FIELD_OFFSET_RESPONSE_BUFFER_LENGTH);
+                        counterLabelsBufferCapacity = buffer.getInt(FIELD_OFFSET_COUNTER_LABELS_BUFFER_LENGTH);
+                        counterValuesBufferCapacity = buffer.getInt(FIELD_OFFSET_COUNTER_VALUES_BUFFER_LENGTH);
+                        alignment = Math.max(buffer.getInt(FIELD_OFFSET_ALIGNMENT), 1);
                     }
 
+                    this.commandBufferOffset = commandBufferOffset(alignment);
+                    this.responseBufferOffset = responseBufferOffset(alignment, commandBufferCapacity);
+
                     int commandBufferLength = commandBufferCapacity + RingBufferDescriptor.TRAILER_LENGTH;
                     int responseBufferLength = responseBufferCapacity + BroadcastBufferDescriptor.TRAILER_LENGTH;
 
-                    int commandBufferOffset = END_OF_META_DATA_OFFSET;
-                    this.buffer = mapExistingFile(controlFile, "commands");
                     this.nukleus = new UnsafeBuffer(buffer, commandBufferOffset, commandBufferLength);
-
-                    int responseBufferOffset = commandBufferOffset + commandBufferLength;
                     this.controller = new UnsafeBuffer(buffer, responseBufferOffset, responseBufferLength);
+
+                    int counterLabelsBufferOffset =
+                            counterLabelsBufferOffset(alignment, commandBufferCapacity, responseBufferCapacity);
+                    int counterValuesBufferOffset = counterValuesBufferOffset(alignment, commandBufferCapacity,
+                            responseBufferCapacity, counterLabelsBufferCapacity);
+
+                    this.counterLabels = new UnsafeBuffer(buffer, counterLabelsBufferOffset, counterLabelsBufferCapacity);
+                    this.counterValues = new UnsafeBuffer(buffer, counterValuesBufferOffset, counterValuesBufferCapacity);
                 }
 
                 @Override
@@ -208,6 +395,30 @@ public final class Functions
                     return controller;
                 }
 
+                @Override
+                public AtomicBuffer getCounterLabels()
+                {
+                    return counterLabels;
+                }
+
+                @Override
+                public AtomicBuffer getCounterValues()
+                {
+                    return counterValues;
+                }
+
+                @Override
+                public int commandBufferOffset()
+                {
+                    return commandBufferOffset;
+                }
+
+                @Override
+                public int responseBufferOffset()
+                {
+                    return responseBufferOffset;
+                }
+
                 @Override
                 public void close()
                 {
@@ -217,7 +428,64 @@ public final class Functions
                 @Override
                 public String toString()
                 {
-                    return String.format("controlCapacity(%d, %d)", nukleus.capacity(), controller.capacity());
+                    return String.format("controlCapacity(%d, %d, %d, %d) [commands @%d, responses @%d]",
+                            nukleus.capacity(), controller.capacity(), counterLabels.capacity(), counterValues.capacity(),
+                            commandBufferOffset, responseBufferOffset);
+                }
+
+                private static int commandBufferOffset(
+                    int alignment)
+                {
+                    return align(END_OF_META_DATA_OFFSET, alignment);
+                }
+
+                private static int responseBufferOffset(
+                    int alignment,
+                    int commandBufferCapacity)
+                {
+                    int commandBufferLength = commandBufferCapacity + RingBufferDescriptor.TRAILER_LENGTH;
+                    return align(commandBufferOffset(alignment) + commandBufferLength, alignment);
+                }
+
+                private static int counterLabelsBufferOffset(
+                    int alignment,
+                    int commandBufferCapacity,
+                    int responseBufferCapacity)
+                {
+                    int responseBufferLength = responseBufferCapacity + BroadcastBufferDescriptor.TRAILER_LENGTH;
+                    return align(responseBufferOffset(alignment, commandBufferCapacity) + responseBufferLength,
+                            Math.max(alignment, BitUtil.CACHE_LINE_LENGTH));
+                }
+
+                private static int counterValuesBufferOffset(
+                    int alignment,
+                    int commandBufferCapacity,
+                    int responseBufferCapacity,
+                    int counterLabelsBufferCapacity)
+                {
+                    return align(counterLabelsBufferOffset(alignment, commandBufferCapacity, responseBufferCapacity) +
+                            counterLabelsBufferCapacity, Math.max(alignment, BitUtil.CACHE_LINE_LENGTH));
+                }
+
+                private static MappedByteBuffer mapNewControlFile(
+                    File controlFile,
+                    int fileLength)
+                {
+                    MappedByteBuffer mapped = null;
+
+                    ensureDirectoryExists(controlFile.getParentFile(), "control");
+                    try (RandomAccessFile file = new RandomAccessFile(controlFile, "rw"))
+                    {
+                        file.setLength(0L);
+                        file.setLength(fileLength);
+                        mapped = file.getChannel().map(READ_WRITE, 0L, fileLength);
+                    }
+                    catch (IOException ex)
+                    {
+                        LangUtil.rethrowUnchecked(ex);
+                    }
+
+                    return mapped;
                 }
             }
 
@@ -227,6 +495,10 @@ public final class Functions
                 private final File location;
                 private final int ringCapacity;
                 private final int broadcastCapacity;
+                private final int counterLabelsCapacity;
+                private final int counterValuesCapacity;
+                private final boolean pageAligned;
+                private final boolean prefault;
 
                 private Eager delegate;
 
@@ -234,12 +506,20 @@ public final class Functions
                     boolean overwrite,
                     File location,
                     int ringCapacity,
-                    int broadcastCapacity)
+                    int broadcastCapacity,
+                    int counterLabelsCapacity,
+                    int counterValuesCapacity,
+                    boolean pageAligned,
+                    boolean prefault)
                 {
                     this.overwrite = overwrite;
                     this.location = location;
                     this.ringCapacity = ringCapacity;
                     this.broadcastCapacity = broadcastCapacity;
+                    this.counterLabelsCapacity = counterLabelsCapacity;
+                    this.counterValuesCapacity = counterValuesCapacity;
+                    this.pageAligned = pageAligned;
+                    this.prefault = prefault;
                 }
 
                 @Override
@@ -256,6 +536,34 @@ public final class Functions
                     return delegate.controller;
                 }
 
+                @Override
+                public AtomicBuffer getCounterLabels()
+                {
+                    ensureInitialized();
+                    return delegate.counterLabels;
+                }
+
+                @Override
+                public AtomicBuffer getCounterValues()
+                {
+                    ensureInitialized();
+                    return delegate.counterValues;
+                }
+
+                @Override
+                public int commandBufferOffset()
+                {
+                    ensureInitialized();
+                    return delegate.commandBufferOffset;
+                }
+
+                @Override
+                public int responseBufferOffset()
+                {
+                    ensureInitialized();
+                    return delegate.responseBufferOffset;
+                }
+
                 @Override
                 public void close() throws Exception
                 {
@@ -268,14 +576,16 @@ public final class Functions
                 @Override
                 public String toString()
                 {
-                    return String.format("controlCapacity(%d, %d)", ringCapacity, broadcastCapacity);
+                    return String.format("controlCapacity(%d, %d, %d, %d)", ringCapacity, broadcastCapacity,
+                            counterLabelsCapacity, counterValuesCapacity);
                 }
 
                 void ensureInitialized()
                 {
                     if (delegate == null)
                     {
-                        delegate = new Eager(overwrite, location, ringCapacity, broadcastCapacity);
+                        delegate = new Eager(overwrite, location, ringCapacity, broadcastCapacity,
+                                counterLabelsCapacity, counterValuesCapacity, pageAligned, prefault);
                     }
                 }
             }
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static java.lang.ThreadLocal.withInitial;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class IdAllocator
+{
+    public static final String SEQUENTIAL_PROPERTY_NAME = "reaktivity.specification.ids.sequential";
+
+    private static final int RANGE_BITS = 16;
+    private static final long RANGE_SIZE = 1L << RANGE_BITS;
+    private static final long ORDINAL_MASK = (1L << 62) - 1;
+
+    private static final long MIX_MULTIPLIER_1 = 0xbf58476d1ce4e5b9L;
+    private static final long MIX_MULTIPLIER_2 = 0x94d049bb133111ebL;
+
+    private static final IdAllocator DEFAULT = new IdAllocator(
+            Boolean.getBoolean(SEQUENTIAL_PROPERTY_NAME),
+            defaultSeed(Long.getLong(RandomSource.SEED_PROPERTY_NAME), RandomSource.current()));
+
+    private final boolean sequential;
+    private final long multiplier1;
+    private final long multiplier2;
+    private final AtomicLong ranges;
+    private final ThreadLocal<Range> range;
+
+    public static IdAllocator current()
+    {
+        return DEFAULT;
+    }
+
+    public static long replyId(
+        long initialId)
+    {
+        return initialId ^ 1L;
+    }
+
+    public IdAllocator(
+        boolean sequential,
+        long seed)
+    {
+        this.sequential = sequential;
+        this.multiplier1 = (MIX_MULTIPLIER_1 ^ (seed * MIX_MULTIPLIER_2)) | 1L;
+        this.multiplier2 = (MIX_MULTIPLIER_2 ^ (seed * MIX_MULTIPLIER_1)) | 1L;
+        this.ranges = new AtomicLong();
+        this.range = withInitial(Range::new);
+    }
+
+    public long nextId()
+    {
+        return nextOrdinal();
+    }
+
+    public long nextInitialId()
+    {
+        // odd, positive, non-zero
+        return (nextOrdinal() << 1) | 1L;
+    }
+
+    public long nextReplyId()
+    {
+        // even, positive, non-zero
+        return nextOrdinal() << 1;
+    }
+
+    static long defaultSeed(
+        Long configured,
+        Random random)
+    {
+        return configured != null ? configured : random.nextLong();
+    }
+
+    private long nextOrdinal()
+    {
+        final Range range = this.range.get();
+
+        if (range.next == range.limit)
+        {
+            final long base = ranges.getAndIncrement() << RANGE_BITS;
+            range.next = Math.max(base, 1L);
+            range.limit = base + RANGE_SIZE;
+        }
+
+        final long ordinal = range.next++;
+        return sequential ? ordinal : scramble(ordinal);
+    }
+
+    private long scramble(
+        long ordinal)
+    {
+        // bijective over 62 bits and maps only zero to zero
+        long bits = ordinal;
+        bits = (bits * multiplier1) & ORDINAL_MASK;
+        bits ^= bits >>> 31;
+        bits = (bits * multiplier2) & ORDINAL_MASK;
+        bits ^= bits >>> 29;
+        return bits;
+    }
+
+    private static final class Range
+    {
+        private long next;
+        private long limit;
+    }
+}
@@ -15,34 +15,84 @@
  */
 package org.reaktivity.specification.nukleus;
 
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
 import static org.agrona.IoUtil.createEmptyFile;
+import static org.agrona.IoUtil.ensureDirectoryExists;
+import static org.agrona.IoUtil.unmap;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.agrona.CloseHelper;
+import org.agrona.IoUtil;
+import org.agrona.LangUtil;
+import org.agrona.UnsafeAccess;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.SleepingIdleStrategy;
 import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
 import org.junit.rules.TestRule;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
+import org.reaktivity.specification.nukleus.OccupancySampler.Occupancy;
+import org.reaktivity.specification.nukleus.streams.StreamsLayout;
 
 public final class NukleusRule implements TestRule
 {
+    public enum Allocation
+    {
+        ZEROED,
+        SPARSE,
+        PREALLOCATED
+    }
+
+    public static final String DIRECTORY_PROPERTY_NAME = "reaktivity.specification.nukleus.directory";
+
     private static final int STREAMS_BUFFER_CAPACITY_DEFAULT = 1024 * 1024;
     private static final int THROTTLE_BUFFER_CAPACITY_DEFAULT = 64 * 1024;
+    private static final double NEAR_FULL_RATIO_DEFAULT = 0.9;
+    private static final long OCCUPANCY_SAMPLE_PERIOD_DEFAULT = 100_000L;
 
-    private File directory;
+    private static final File SHM_DIRECTORY = new File("/dev/shm");
+    private static final int PAGE_SIZE = UnsafeAccess.UNSAFE.pageSize();
+
+    private final List<File> pending;
+    private final List<File> created;
+    private final List<StreamsLayout> layouts;
+
+    private String directory;
     private long streamsBufferCapacity;
     private long throttleBufferCapacity;
+    private boolean shm;
+    private Allocation allocation;
+    private boolean parallel;
+    private boolean cleanup;
+    private boolean applied;
+    private double occupancyThreshold;
+    private double nearFullRatio;
+    private long occupancySamplePeriod;
+    private OccupancySampler sampler;
+    private AgentRunner samplerRunner;
+    private volatile Throwable samplerError;
 
     public NukleusRule()
     {
         this.streamsBufferCapacity = STREAMS_BUFFER_CAPACITY_DEFAULT;
         this.throttleBufferCapacity = THROTTLE_BUFFER_CAPACITY_DEFAULT;
+        this.allocation = Allocation.ZEROED;
+        this.pending = new ArrayList<>();
+        this.created = new ArrayList<>();
+        this.layouts = new ArrayList<>();
+        this.nearFullRatio = NEAR_FULL_RATIO_DEFAULT;
+        this.occupancySamplePeriod = OCCUPANCY_SAMPLE_PERIOD_DEFAULT;
     }
 
     public NukleusRule directory(String directory)
     {
-        this.directory = new File("./" + directory);
+        this.directory = directory;
         return this;
     }
 
@@ -58,14 +108,73 @@ public final class NukleusRule implements TestRule
         return this;
     }
 
+    public NukleusRule shm(boolean shm)
+    {
+        this.shm = shm;
+        return this;
+    }
+
+    public NukleusRule allocation(Allocation allocation)
+    {
+        this.allocation = allocation;
+        return this;
+    }
+
+    public NukleusRule parallel(boolean parallel)
+    {
+        this.parallel = parallel;
+        return this;
+    }
+
+    public NukleusRule cleanup(boolean cleanup)
+    {
+        this.cleanup = cleanup;
+        return this;
+    }
+
+    public NukleusRule occupancy(double threshold)
+    {
+        this.occupancyThreshold = threshold;
+        return this;
+    }
+
+    public NukleusRule nearFullRatio(double nearFullRatio)
+    {
+        this.nearFullRatio = nearFullRatio;
+        return this;
+    }
+
+    public NukleusRule occupancySamplePeriod(long occupancySamplePeriod)
+    {
+        this.occupancySamplePeriod = occupancySamplePeriod;
+        return this;
+    }
+
+    public OccupancySampler occupancy()
+    {
+        return sampler;
+    }
+
+    public File directory()
+    {
+        return shm && SHM_DIRECTORY.isDirectory() ? new File(SHM_DIRECTORY, directory) : new File("./" + directory);
+    }
+
     public NukleusRule streams(
         String nukleus,
         String source)
     {
-        File streams = new File(directory, String.format("%s/streams/%s", nukleus, source));
-        long streamsBufferSize = streamsBufferCapacity + RingBufferDescriptor.TRAILER_LENGTH;
-        long throttleBufferSize = throttleBufferCapacity + RingBufferDescriptor.TRAILER_LENGTH;
-        CloseHelper.close(createEmptyFile(streams.getAbsoluteFile(), streamsBufferSize + throttleBufferSize));
+        File streams = new File(directory(), String.format("%s/streams/%s", nukleus, source));
+        if (applied)
+        {
+            createFile(streams);
+            created.add(streams);
+            sampleOccupancy(streams);
+        }
+        else
+        {
+            pending.add(streams);
+        }
         return this;
     }
 
@@ -77,8 +186,244 @@ public final class NukleusRule implements TestRule
             @Override
             public void evaluate() throws Throwable
             {
-                base.evaluate();
+                final String property = System.setProperty(DIRECTORY_PROPERTY_NAME, directory().getPath());
+                createFiles();
+                startSampling();
+                applied = true;
+                try
+                {
+                    base.evaluate();
+                }
+                finally
+                {
+                    applied = false;
+                    stopSampling();
+                    if (cleanup)
+                    {
+                        deleteFiles();
+                    }
+                    restoreProperty(DIRECTORY_PROPERTY_NAME, property);
+                }
+                rethrowSamplerError();
+                assertOccupancy();
             }
         };
     }
+
+    private static void restoreProperty(
+        String name,
+        String value)
+    {
+        if (value != null)
+        {
+            System.setProperty(name, value);
+        }
+        else
+        {
+            System.clearProperty(name);
+        }
+    }
+
+    private void createFiles()
+    {
+        if (parallel)
+        {
+            pending.stream()
+                   .map(streams -> streams.getAbsoluteFile().getParentFile())
+                   .distinct()
+                   .forEach(parent -> ensureDirectoryExists(parent, parent.getPath()));
+            pending.parallelStream().forEach(this::createFile);
+        }
+        else
+        {
+            pending.forEach(this::createFile);
+        }
+
+        created.addAll(pending);
+        pending.clear();
+    }
+
+    private void startSampling()
+    {
+        if (occupancyThreshold > 0.0)
+        {
+            sampler = new OccupancySampler(nearFullRatio);
+            created.forEach(this::sampleOccupancy);
+            samplerError = null;
+            samplerRunner = new AgentRunner(new SleepingIdleStrategy(occupancySamplePeriod), this::onSamplerError,
+                    null, sampler);
+            AgentRunner.startOnThread(samplerRunner);
+        }
+    }
+
+    private void onSamplerError(
+        Throwable error)
+    {
+        final Throwable samplerError = this.samplerError;
+        if (samplerError == null)
+        {
+            this.samplerError = error;
+        }
+        else if (samplerError != error)
+        {
+            samplerError.addSuppressed(error);
+        }
+    }
+
+    private void rethrowSamplerError() throws Throwable
+    {
+        final Throwable samplerError = this.samplerError;
+        if (samplerError != null)
+        {
+            this.samplerError = null;
+            throw new AssertionError("occupancy sampler failed", samplerError);
+        }
+    }
+
+    private void sampleOccupancy(
+        File streams)
+    {
+        if (sampler != null)
+        {
+            String name = directory().toPath().relativize(streams.toPath()).toString();
+            StreamsLayout layout = new StreamsLayout(streams, (int) streamsBufferCapacity, (int) throttleBufferCapacity);
+            layouts.add(layout);
+            sampler.sample(name + " streams", layout.streamsBuffer());
+            sampler.sample(name + " throttle", layout.throttleBuffer());
+        }
+    }
+
+    private void stopSampling()
+    {
+        if (samplerRunner != null)
+        {
+            CloseHelper.close(samplerRunner);
+            samplerRunner = null;
+            try
+            {
+                sampler.doWork();
+            }
+            catch (Throwable ex)
+            {
+                onSamplerError(ex);
+            }
+            layouts.forEach(StreamsLayout::close);
+            layouts.clear();
+        }
+    }
+
+    private void assertOccupancy()
+    {
+        if (sampler != null)
+        {
+            for (Occupancy occupancy : sampler.occupancies())
+            {
+                if (occupancy.highWaterRatio() > occupancyThreshold)
+                {
+                    throw new AssertionError(String.format("occupancy exceeded %.1f%%: %s",
+                            occupancyThreshold * 100.0, sampler));
+                }
+            }
+        }
+    }
+
+    private void deleteFiles()
+    {
+        File root = directory().getAbsoluteFile();
+        for (File file : created)
+        {
+            File location = file.getAbsoluteFile();
+            IoUtil.deleteIfExists(location);
+            for (File parent = location.getParentFile();
+                 parent != null && parent.toPath().startsWith(root.toPath()) && parent.delete();
+                 parent = parent.getParentFile())
+            {
+                // empty
+            }
+        }
+        created.clear();
+    }
+
+    private void createFile(
+        File streams)
+    {
+        long streamsBufferSize = streamsBufferCapacity + RingBufferDescriptor.TRAILER_LENGTH;
+        long throttleBufferSize = throttleBufferCapacity + RingBufferDescriptor.TRAILER_LENGTH;
+        long length = streamsBufferSize + throttleBufferSize;
+        File location = streams.getAbsoluteFile();
+
+        switch (allocation)
+        {
+        case ZEROED:
+            CloseHelper.close(createEmptyFile(location, length));
+            break;
+        default:
+            createSparseFile(location, length, allocation == Allocation.PREALLOCATED);
+            break;
+        }
+    }
+
+    private static void createSparseFile(
+        File location,
+        long length,
+        boolean preallocate)
+    {
+        ensureDirectoryExists(location.getParentFile(), location.getParent());
+        try (RandomAccessFile file = new RandomAccessFile(location, "rw"))
+        {
+            file.setLength(0L);
+
+            if (!preallocate)
+            {
+                file.setLength(length);
+            }
+            else if (!fallocate(location, length))
+            {
+                file.setLength(length);
+                touchPages(file, length);
+            }
+        }
+        catch (IOException ex)
+        {
+            LangUtil.rethrowUnchecked(ex);
+        }
+    }
+
+    private static boolean fallocate(
+        File location,
+        long length)
+    {
+        boolean allocated = false;
+
+        try
+        {
+            Process process = new ProcessBuilder("fallocate", "-l", Long.toString(length), location.getPath())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            allocated = process.waitFor() == 0;
+        }
+        catch (IOException ex)
+        {
+            // fallocate not available, fall back to touching pages
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        return allocated;
+    }
+
+    private static void touchPages(
+        RandomAccessFile file,
+        long length) throws IOException
+    {
+        MappedByteBuffer mapped = file.getChannel().map(READ_WRITE, 0L, length);
+        for (int offset = 0; offset < length; offset += PAGE_SIZE)
+        {
+            mapped.put(offset, (byte) 0);
+        }
+        unmap(mapped);
+    }
 }
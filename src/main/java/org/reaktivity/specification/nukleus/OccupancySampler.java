@@ -0,0 +1,170 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.SystemNanoClock;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+
+public final class OccupancySampler implements Agent
+{
+    private final NanoClock clock;
+    private final double nearFullRatio;
+    private final List<Occupancy> occupancies;
+
+    public OccupancySampler(
+        double nearFullRatio)
+    {
+        this(nearFullRatio, new SystemNanoClock());
+    }
+
+    public OccupancySampler(
+        double nearFullRatio,
+        NanoClock clock)
+    {
+        this.nearFullRatio = nearFullRatio;
+        this.clock = clock;
+        this.occupancies = new CopyOnWriteArrayList<>();
+    }
+
+    public Occupancy sample(
+        String name,
+        AtomicBuffer buffer)
+    {
+        final RingBuffer ring = new ManyToOneRingBuffer(buffer);
+        final Occupancy occupancy = new Occupancy(name, ring, (long) (ring.capacity() * nearFullRatio), clock.nanoTime());
+        occupancies.add(occupancy);
+        return occupancy;
+    }
+
+    public List<Occupancy> occupancies()
+    {
+        return occupancies;
+    }
+
+    @Override
+    public int doWork()
+    {
+        final long now = clock.nanoTime();
+        for (int i = 0; i < occupancies.size(); i++)
+        {
+            occupancies.get(i).sample(now);
+        }
+        return 0;
+    }
+
+    @Override
+    public String roleName()
+    {
+        return "occupancy-sampler";
+    }
+
+    @Override
+    public String toString()
+    {
+        final StringBuilder report = new StringBuilder(roleName());
+        occupancies.forEach(o -> report.append(System.lineSeparator()).append("    ").append(o));
+        return report.toString();
+    }
+
+    public static final class Occupancy
+    {
+        private final String name;
+        private final RingBuffer ring;
+        private final long nearFull;
+
+        private long lastSampleAt;
+
+        private volatile long samples;
+        private volatile long highWater;
+        private volatile long nearFullNanos;
+
+        private Occupancy(
+            String name,
+            RingBuffer ring,
+            long nearFull,
+            long sampleAt)
+        {
+            this.name = name;
+            this.ring = ring;
+            this.nearFull = nearFull;
+            this.lastSampleAt = sampleAt;
+        }
+
+        public String name()
+        {
+            return name;
+        }
+
+        public int capacity()
+        {
+            return ring.capacity();
+        }
+
+        public long samples()
+        {
+            return samples;
+        }
+
+        public long highWater()
+        {
+            return highWater;
+        }
+
+        public double highWaterRatio()
+        {
+            return (double) highWater / ring.capacity();
+        }
+
+        public long nearFullNanos()
+        {
+            return nearFullNanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s: highWater=%d/%d (%.1f%%), nearFull=%.3fms, samples=%d",
+                    name, highWater, ring.capacity(), highWaterRatio() * 100.0, nearFullNanos / 1e6, samples);
+        }
+
+        private void sample(
+            long now)
+        {
+            final long consumerPosition = ring.consumerPosition();
+            final long occupancy = ring.producerPosition() - consumerPosition;
+
+            if (occupancy > highWater)
+            {
+                highWater = occupancy;
+            }
+
+            if (occupancy >= nearFull && nearFull > 0L)
+            {
+                nearFullNanos += now - lastSampleAt;
+            }
+
+            lastSampleAt = now;
+            samples++;
+        }
+    }
+}
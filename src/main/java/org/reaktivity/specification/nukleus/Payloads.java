@@ -0,0 +1,312 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.agrona.BufferUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+public final class Payloads
+{
+    public static final long MAX_CACHED_BYTES = 256L * 1024 * 1024;
+
+    private static final long RANDOM_SEED = 0x5eed_5eed_5eed_5eedL;
+
+    private static final byte KIND_RANDOM = 1;
+    private static final byte KIND_REPEAT = 2;
+    private static final byte KIND_SEQUENCE = 3;
+
+    private static final Cache PAYLOADS = new Cache(MAX_CACHED_BYTES);
+
+    public static DirectBuffer random(
+        int length)
+    {
+        return PAYLOADS.buffer(randomKey(length));
+    }
+
+    public static DirectBuffer repeat(
+        byte[] pattern,
+        int length)
+    {
+        return PAYLOADS.buffer(repeatKey(pattern, length));
+    }
+
+    public static DirectBuffer sequence(
+        int length,
+        int seed)
+    {
+        return PAYLOADS.buffer(sequenceKey(length, seed));
+    }
+
+    public static byte[] randomBytes(
+        int length)
+    {
+        return PAYLOADS.array(randomKey(length));
+    }
+
+    public static byte[] repeatBytes(
+        byte[] pattern,
+        int length)
+    {
+        return PAYLOADS.array(repeatKey(pattern, length));
+    }
+
+    public static byte[] sequenceBytes(
+        int length,
+        int seed)
+    {
+        return PAYLOADS.array(sequenceKey(length, seed));
+    }
+
+    static long cachedBytes()
+    {
+        return PAYLOADS.cachedBytes();
+    }
+
+    static Key randomKey(
+        int length)
+    {
+        return new Key(KIND_RANDOM, RANDOM_SEED, null, length);
+    }
+
+    static Key repeatKey(
+        byte[] pattern,
+        int length)
+    {
+        if (pattern == null || pattern.length == 0)
+        {
+            throw new IllegalArgumentException("pattern must not be empty");
+        }
+
+        return new Key(KIND_REPEAT, 0L, pattern.clone(), length);
+    }
+
+    static Key sequenceKey(
+        int length,
+        int seed)
+    {
+        return new Key(KIND_SEQUENCE, seed, null, length);
+    }
+
+    private static DirectBuffer newPayload(
+        Key key)
+    {
+        final int length = key.length;
+        final UnsafeBuffer buffer = new UnsafeBuffer(BufferUtil.allocateDirectAligned(Math.max(length, 1), CACHE_LINE_LENGTH));
+
+        switch (key.kind)
+        {
+        case KIND_RANDOM:
+            final SplittableRandom random = new SplittableRandom(key.seed);
+            int index = 0;
+            for (; index + SIZE_OF_LONG <= length; index += SIZE_OF_LONG)
+            {
+                buffer.putLong(index, random.nextLong());
+            }
+            for (long bits = random.nextLong(); index < length; index++, bits >>>= 8)
+            {
+                buffer.putByte(index, (byte) bits);
+            }
+            break;
+        case KIND_REPEAT:
+            final byte[] pattern = key.pattern;
+            for (int offset = 0; offset < length; offset += pattern.length)
+            {
+                buffer.putBytes(offset, pattern, 0, Math.min(pattern.length, length - offset));
+            }
+            break;
+        case KIND_SEQUENCE:
+            for (int offset = 0; offset < length; offset++)
+            {
+                buffer.putByte(offset, (byte) (key.seed + offset));
+            }
+            break;
+        default:
+            throw new IllegalStateException(String.format("unexpected payload kind: %d", key.kind));
+        }
+
+        return new UnsafeBuffer(buffer, 0, length);
+    }
+
+    static final class Key
+    {
+        private final byte kind;
+        private final long seed;
+        private final byte[] pattern;
+        private final int length;
+
+        private Key(
+            byte kind,
+            long seed,
+            byte[] pattern,
+            int length)
+        {
+            this.kind = kind;
+            this.seed = seed;
+            this.pattern = pattern;
+            this.length = length;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int hash = kind;
+            hash = 31 * hash + Long.hashCode(seed);
+            hash = 31 * hash + Arrays.hashCode(pattern);
+            hash = 31 * hash + length;
+            return hash;
+        }
+
+        @Override
+        public boolean equals(
+            Object obj)
+        {
+            if (this == obj)
+            {
+                return true;
+            }
+
+            if (!(obj instanceof Key))
+            {
+                return false;
+            }
+
+            final Key that = (Key) obj;
+            return this.kind == that.kind &&
+                this.seed == that.seed &&
+                this.length == that.length &&
+                Arrays.equals(this.pattern, that.pattern);
+        }
+    }
+
+    static final class Cache
+    {
+        private final long maxCachedBytes;
+        private final Map<Key, Payload> payloads;
+
+        private long cachedBytes;
+
+        Cache(
+            long maxCachedBytes)
+        {
+            this.maxCachedBytes = maxCachedBytes;
+            this.payloads = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized DirectBuffer buffer(
+            Key key)
+        {
+            return payload(key).buffer;
+        }
+
+        synchronized byte[] array(
+            Key key)
+        {
+            final Payload payload = payload(key);
+
+            if (payload.array == null)
+            {
+                final DirectBuffer buffer = payload.buffer;
+                payload.array = new byte[buffer.capacity()];
+                buffer.getBytes(0, payload.array);
+
+                if (payloads.get(key) == payload)
+                {
+                    cachedBytes += payload.array.length;
+                    evict();
+                }
+            }
+
+            return payload.array;
+        }
+
+        synchronized long cachedBytes()
+        {
+            return cachedBytes;
+        }
+
+        synchronized int cachedPayloads()
+        {
+            return payloads.size();
+        }
+
+        private Payload payload(
+            Key key)
+        {
+            if (key.length < 0)
+            {
+                throw new IllegalArgumentException(String.format("negative payload length: %d", key.length));
+            }
+
+            Payload payload = payloads.get(key);
+
+            if (payload == null && key.length > maxCachedBytes)
+            {
+                payload = new Payload(newPayload(key));
+            }
+            else if (payload == null)
+            {
+                payload = new Payload(newPayload(key));
+                payloads.put(key, payload);
+                cachedBytes += key.length;
+                evict();
+            }
+
+            return payload;
+        }
+
+        private void evict()
+        {
+            for (Iterator<Payload> i = payloads.values().iterator(); cachedBytes > maxCachedBytes && i.hasNext(); )
+            {
+                cachedBytes -= i.next().sizeof();
+                i.remove();
+            }
+        }
+    }
+
+    private static final class Payload
+    {
+        private final DirectBuffer buffer;
+
+        private byte[] array;
+
+        private Payload(
+            DirectBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+
+        private long sizeof()
+        {
+            return buffer.capacity() + (array != null ? array.length : 0);
+        }
+    }
+
+    private Payloads()
+    {
+        // utility
+    }
+}
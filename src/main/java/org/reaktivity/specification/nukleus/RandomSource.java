@@ -0,0 +1,128 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static java.lang.ThreadLocal.withInitial;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+public final class RandomSource extends Random
+{
+    public static final String SEED_PROPERTY_NAME = "reaktivity.specification.random.seed";
+
+    private static final long serialVersionUID = 1L;
+
+    private static final SplittableRandom ROOT = newRoot();
+    private static final ThreadLocal<RandomSource> CURRENT = withInitial(RandomSource::newCurrent);
+
+    private SplittableRandom random;
+
+    public static RandomSource current()
+    {
+        return CURRENT.get();
+    }
+
+    public static RandomSource seeded(
+        long seed)
+    {
+        return new RandomSource(seed);
+    }
+
+    public RandomSource(
+        long seed)
+    {
+        super(seed);
+    }
+
+    private RandomSource(
+        SplittableRandom random)
+    {
+        super(0L);
+        this.random = random;
+    }
+
+    public RandomSource split()
+    {
+        return new RandomSource(random.split());
+    }
+
+    @Override
+    public void setSeed(
+        long seed)
+    {
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public int nextInt()
+    {
+        return random.nextInt();
+    }
+
+    @Override
+    public int nextInt(
+        int bound)
+    {
+        return random.nextInt(bound);
+    }
+
+    @Override
+    public long nextLong()
+    {
+        return random.nextLong();
+    }
+
+    @Override
+    public boolean nextBoolean()
+    {
+        return random.nextBoolean();
+    }
+
+    @Override
+    public double nextDouble()
+    {
+        return random.nextDouble();
+    }
+
+    @Override
+    public void nextBytes(
+        byte[] bytes)
+    {
+        random.nextBytes(bytes);
+    }
+
+    @Override
+    protected int next(
+        int bits)
+    {
+        return (int) (random.nextLong() >>> (Long.SIZE - bits));
+    }
+
+    private static RandomSource newCurrent()
+    {
+        synchronized (ROOT)
+        {
+            return new RandomSource(ROOT.split());
+        }
+    }
+
+    private static SplittableRandom newRoot()
+    {
+        final Long seed = Long.getLong(SEED_PROPERTY_NAME);
+        return seed != null ? new SplittableRandom(seed) : new SplittableRandom();
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.agrona.collections.Hashing.DEFAULT_LOAD_FACTOR;
+
+import java.util.concurrent.TimeUnit;
+
+import org.agrona.DeadlineTimerWheel;
+import org.agrona.collections.Long2LongHashMap;
+
+public final class SignalScheduler
+{
+    public static final long NO_CANCEL_ID = 0L;
+
+    private static final long NO_VALUE = Long.MIN_VALUE;
+
+    private final DeadlineTimerWheel wheel;
+    private final DeadlineTimerWheel.TimerHandler onTimerExpiry;
+    private final SignalHandler handler;
+    private final Long2LongHashMap timerIds;
+    private final Long2LongHashMap cancelIds;
+    private final Long2LongHashMap streamIds;
+    private final Long2LongHashMap signalIds;
+    private final Long2LongHashMap deadlines;
+
+    private long delivered;
+    private long cancelled;
+    private long maxLateness;
+    private long sumLateness;
+
+    @FunctionalInterface
+    public interface SignalHandler
+    {
+        void onSignal(
+            long streamId,
+            long cancelId,
+            int signalId,
+            long deadline,
+            long now);
+    }
+
+    public SignalScheduler(
+        TimeUnit timeUnit,
+        long startTime,
+        long tickResolution,
+        int ticksPerWheel,
+        int initialCapacity,
+        SignalHandler handler)
+    {
+        this.wheel = new DeadlineTimerWheel(timeUnit, startTime, tickResolution, ticksPerWheel);
+        this.onTimerExpiry = this::onTimerExpiry;
+        this.handler = handler;
+        this.timerIds = new Long2LongHashMap(initialCapacity, DEFAULT_LOAD_FACTOR, NO_VALUE);
+        this.cancelIds = new Long2LongHashMap(initialCapacity, DEFAULT_LOAD_FACTOR, NO_VALUE);
+        this.streamIds = new Long2LongHashMap(initialCapacity, DEFAULT_LOAD_FACTOR, NO_VALUE);
+        this.signalIds = new Long2LongHashMap(initialCapacity, DEFAULT_LOAD_FACTOR, NO_VALUE);
+        this.deadlines = new Long2LongHashMap(initialCapacity, DEFAULT_LOAD_FACTOR, NO_VALUE);
+    }
+
+    public long schedule(
+        long streamId,
+        long cancelId,
+        int signalId,
+        long deadline)
+    {
+        if (cancelId != NO_CANCEL_ID)
+        {
+            cancel(cancelId);
+        }
+
+        final long timerId = wheel.scheduleTimer(deadline);
+        streamIds.put(timerId, streamId);
+        signalIds.put(timerId, signalId);
+        deadlines.put(timerId, deadline);
+
+        if (cancelId != NO_CANCEL_ID)
+        {
+            timerIds.put(cancelId, timerId);
+            cancelIds.put(timerId, cancelId);
+        }
+
+        return timerId;
+    }
+
+    public boolean cancel(
+        long cancelId)
+    {
+        final long timerId = timerIds.remove(cancelId);
+        final boolean removed = timerId != NO_VALUE && wheel.cancelTimer(timerId);
+
+        if (removed)
+        {
+            remove(timerId);
+            cancelled++;
+        }
+
+        return removed;
+    }
+
+    public int poll(
+        long now)
+    {
+        int workCount = 0;
+        long tickTime;
+
+        do
+        {
+            tickTime = wheel.currentTickTime();
+            workCount += wheel.poll(now, onTimerExpiry, Integer.MAX_VALUE);
+        }
+        while (tickTime <= now);
+
+        return workCount;
+    }
+
+    public long pending()
+    {
+        return wheel.timerCount();
+    }
+
+    public long delivered()
+    {
+        return delivered;
+    }
+
+    public long cancelled()
+    {
+        return cancelled;
+    }
+
+    public long maxLateness()
+    {
+        return maxLateness;
+    }
+
+    public long meanLateness()
+    {
+        return delivered != 0L ? sumLateness / delivered : 0L;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("SignalScheduler [pending=%d, delivered=%d, cancelled=%d, maxLateness=%d]",
+                pending(), delivered, cancelled, maxLateness);
+    }
+
+    private boolean onTimerExpiry(
+        TimeUnit timeUnit,
+        long now,
+        long timerId)
+    {
+        final long streamId = streamIds.get(timerId);
+        final long cancelId = cancelIds.get(timerId);
+        final int signalId = (int) signalIds.get(timerId);
+        final long deadline = deadlines.get(timerId);
+
+        if (cancelId != NO_VALUE)
+        {
+            timerIds.remove(cancelId);
+        }
+        remove(timerId);
+
+        final long lateness = Math.max(now - deadline, 0L);
+        maxLateness = Math.max(maxLateness, lateness);
+        sumLateness += lateness;
+        delivered++;
+
+        handler.onSignal(streamId, cancelId != NO_VALUE ? cancelId : NO_CANCEL_ID, signalId, deadline, now);
+
+        return true;
+    }
+
+    private void remove(
+        long timerId)
+    {
+        cancelIds.remove(timerId);
+        streamIds.remove(timerId);
+        signalIds.remove(timerId);
+        deadlines.remove(timerId);
+    }
+}
@@ -0,0 +1,204 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.agrona.BitUtil.CACHE_LINE_LENGTH;
+import static org.agrona.BitUtil.SIZE_OF_INT;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+import static org.agrona.BitUtil.align;
+import static org.agrona.IoUtil.ensureDirectoryExists;
+import static org.agrona.IoUtil.mapExistingFile;
+import static org.agrona.IoUtil.mapNewFile;
+import static org.agrona.IoUtil.unmap;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+
+public final class SlabPool implements AutoCloseable
+{
+    public static final int NO_SLOT = -1;
+    public static final long NO_OWNER = 0L;
+
+    private static final int SLAB_POOL_VERSION = 1;
+
+    private static final int FIELD_OFFSET_VERSION = 0;
+    private static final int FIELD_OFFSET_POOL_ID = FIELD_OFFSET_VERSION + SIZE_OF_INT;
+    private static final int FIELD_OFFSET_SLOT_COUNT = FIELD_OFFSET_POOL_ID + SIZE_OF_INT;
+    private static final int FIELD_OFFSET_SLOT_CAPACITY = FIELD_OFFSET_SLOT_COUNT + SIZE_OF_INT;
+    private static final int FIELD_OFFSET_ACQUIRED = align(FIELD_OFFSET_SLOT_CAPACITY + SIZE_OF_INT, SIZE_OF_LONG);
+
+    private static final int END_OF_META_DATA_OFFSET = align(FIELD_OFFSET_ACQUIRED + SIZE_OF_LONG, CACHE_LINE_LENGTH);
+
+    private final MappedByteBuffer mapped;
+    private final AtomicBuffer metadata;
+    private final AtomicBuffer owners;
+    private final AtomicBuffer slabs;
+    private final UnsafeBuffer[] slots;
+    private final int poolId;
+    private final int slotCount;
+    private final int slotCapacity;
+
+    private int cursor;
+
+    private SlabPool(
+        MappedByteBuffer mapped)
+    {
+        this.mapped = mapped;
+        this.metadata = new UnsafeBuffer(mapped, 0, END_OF_META_DATA_OFFSET);
+        assert metadata.getInt(FIELD_OFFSET_VERSION) == SLAB_POOL_VERSION;
+
+        this.poolId = metadata.getInt(FIELD_OFFSET_POOL_ID);
+        this.slotCount = metadata.getInt(FIELD_OFFSET_SLOT_COUNT);
+        this.slotCapacity = metadata.getInt(FIELD_OFFSET_SLOT_CAPACITY);
+        this.owners = new UnsafeBuffer(mapped, END_OF_META_DATA_OFFSET, slotCount * SIZE_OF_LONG);
+        this.slabs = new UnsafeBuffer(mapped, slabsOffset(slotCount), slotCount * slotCapacity);
+        this.slots = new UnsafeBuffer[slotCount];
+    }
+
+    public static SlabPool create(
+        File location,
+        int poolId,
+        int slotCount,
+        int slotCapacity)
+    {
+        if (slotCount <= 0 || slotCapacity <= 0 || slotCapacity % SIZE_OF_LONG != 0)
+        {
+            throw new IllegalArgumentException(
+                String.format("invalid slab pool: slotCount=%d, slotCapacity=%d", slotCount, slotCapacity));
+        }
+
+        final File file = location.getAbsoluteFile();
+        final long length = slabsOffset(slotCount) + (long) slotCount * slotCapacity;
+        ensureDirectoryExists(file.getParentFile(), "slabs");
+        final MappedByteBuffer mapped = mapNewFile(file, length, false);
+        final UnsafeBuffer metadata = new UnsafeBuffer(mapped, 0, END_OF_META_DATA_OFFSET);
+        metadata.putInt(FIELD_OFFSET_POOL_ID, poolId);
+        metadata.putInt(FIELD_OFFSET_SLOT_COUNT, slotCount);
+        metadata.putInt(FIELD_OFFSET_SLOT_CAPACITY, slotCapacity);
+        metadata.putIntOrdered(FIELD_OFFSET_VERSION, SLAB_POOL_VERSION);
+
+        return new SlabPool(mapped);
+    }
+
+    public static SlabPool map(
+        File location)
+    {
+        return new SlabPool(mapExistingFile(location.getAbsoluteFile(), "slabs"));
+    }
+
+    public int poolId()
+    {
+        return poolId;
+    }
+
+    public int slotCount()
+    {
+        return slotCount;
+    }
+
+    public int slotCapacity()
+    {
+        return slotCapacity;
+    }
+
+    public long acquired()
+    {
+        return metadata.getLongVolatile(FIELD_OFFSET_ACQUIRED);
+    }
+
+    public int acquire(
+        long owner)
+    {
+        assert owner != NO_OWNER;
+
+        for (int i = 0; i < slotCount; i++)
+        {
+            final int slot = cursor;
+            cursor = slot + 1 == slotCount ? 0 : slot + 1;
+
+            if (owners.getLongVolatile(slot << 3) == NO_OWNER &&
+                owners.compareAndSetLong(slot << 3, NO_OWNER, owner))
+            {
+                metadata.getAndAddLong(FIELD_OFFSET_ACQUIRED, 1L);
+                return slot;
+            }
+        }
+
+        return NO_SLOT;
+    }
+
+    public boolean transfer(
+        int slot,
+        long owner,
+        long newOwner)
+    {
+        assert newOwner != NO_OWNER;
+        return owners.compareAndSetLong(slot << 3, owner, newOwner);
+    }
+
+    public boolean release(
+        int slot,
+        long owner)
+    {
+        final boolean released = owners.compareAndSetLong(slot << 3, owner, NO_OWNER);
+        if (released)
+        {
+            metadata.getAndAddLong(FIELD_OFFSET_ACQUIRED, -1L);
+        }
+        return released;
+    }
+
+    public long owner(
+        int slot)
+    {
+        return owners.getLongVolatile(slot << 3);
+    }
+
+    public MutableDirectBuffer buffer(
+        int slot)
+    {
+        UnsafeBuffer buffer = slots[slot];
+        if (buffer == null)
+        {
+            buffer = new UnsafeBuffer(slabs, slot * slotCapacity, slotCapacity);
+            slots[slot] = buffer;
+        }
+        return buffer;
+    }
+
+    @Override
+    public void close()
+    {
+        unmap(mapped);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("SlabPool [poolId=%d, slotCount=%d, slotCapacity=%d, acquired=%d]",
+                poolId, slotCount, slotCapacity, acquired());
+    }
+
+    private static int slabsOffset(
+        int slotCount)
+    {
+        return align(END_OF_META_DATA_OFFSET + slotCount * SIZE_OF_LONG, CACHE_LINE_LENGTH);
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.agrona.collections.Hashing.DEFAULT_LOAD_FACTOR;
+
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.LongArrayQueue;
+
+public final class WeightedFairScheduler
+{
+    private static final long NO_VALUE = -1L;
+
+    private final BudgetPool budgets;
+    private final long budgetId;
+    private final int padding;
+    private final int quantum;
+    private final Long2LongHashMap weights;
+    private final Long2LongHashMap deficits;
+    private final Long2LongHashMap pending;
+    private final LongArrayQueue ready;
+
+    @FunctionalInterface
+    public interface GrantHandler
+    {
+        void onGrant(
+            long streamId,
+            int credit);
+    }
+
+    public WeightedFairScheduler(
+        BudgetPool budgets,
+        long budgetId,
+        int padding,
+        int quantum,
+        int initialCapacity)
+    {
+        if (quantum <= 0)
+        {
+            throw new IllegalArgumentException("Quantum must be positive: " + quantum);
+        }
+
+        this.budgets = budgets;
+        this.budgetId = budgetId;
+        this.padding = padding;
+        this.quantum = quantum;
+        this.weights = new Long2LongHashMap(initialCapacity, DEFAULT_LOAD_FACTOR, NO_VALUE);
+        this.deficits = new Long2LongHashMap(initialCapacity, DEFAULT_LOAD_FACTOR, NO_VALUE);
+        this.pending = new Long2LongHashMap(initialCapacity, DEFAULT_LOAD_FACTOR, NO_VALUE);
+        this.ready = new LongArrayQueue(initialCapacity, NO_VALUE);
+    }
+
+    public void attach(
+        long streamId,
+        int weight)
+    {
+        if (weight < 1 || weight > 0xff)
+        {
+            throw new IllegalArgumentException("Weight out of range [1, 255]: " + weight);
+        }
+
+        weights.put(streamId, weight);
+        deficits.put(streamId, 0L);
+    }
+
+    public void detach(
+        long streamId)
+    {
+        weights.remove(streamId);
+        deficits.remove(streamId);
+
+        if (pending.remove(streamId) != NO_VALUE)
+        {
+            for (int count = ready.size(); count > 0; count--)
+            {
+                final long readyId = ready.pollLong();
+                if (readyId != streamId)
+                {
+                    ready.addLong(readyId);
+                }
+            }
+        }
+    }
+
+    public void offer(
+        long streamId,
+        int length)
+    {
+        assert length > 0;
+
+        final long weight = weights.get(streamId);
+        if (weight == NO_VALUE)
+        {
+            throw new IllegalStateException(String.format("stream not attached: streamId=%d", streamId));
+        }
+
+        final long existing = pending.get(streamId);
+        if (existing == NO_VALUE)
+        {
+            pending.put(streamId, length);
+            ready.addLong(streamId);
+        }
+        else
+        {
+            pending.put(streamId, existing + length);
+        }
+    }
+
+    public long pending(
+        long streamId)
+    {
+        final long length = pending.get(streamId);
+        return length != NO_VALUE ? length : 0L;
+    }
+
+    public int ready()
+    {
+        return ready.size();
+    }
+
+    public int schedule(
+        GrantHandler handler)
+    {
+        int grants = 0;
+
+        for (int rounds = ready.size(); rounds > 0; rounds--)
+        {
+            final long streamId = ready.pollLong();
+            final long remaining = pending.get(streamId);
+            if (remaining == NO_VALUE)
+            {
+                continue;
+            }
+
+            final long allotment = quantum * weights.get(streamId);
+            final long deficit = deficits.get(streamId) + allotment;
+            final int wanted = (int) Math.min(Math.min(deficit, remaining), Integer.MAX_VALUE);
+            final int credit = budgets.claim(budgetId, padding, 0, wanted);
+
+            if (credit != 0)
+            {
+                handler.onGrant(streamId, credit);
+                grants++;
+            }
+
+            if (remaining == credit)
+            {
+                pending.remove(streamId);
+                deficits.put(streamId, 0L);
+            }
+            else
+            {
+                pending.put(streamId, remaining - credit);
+                deficits.put(streamId, Math.min(deficit - credit, allotment));
+                ready.addLong(streamId);
+            }
+
+            if (credit < wanted)
+            {
+                break;
+            }
+        }
+
+        return grants;
+    }
+}
@@ -53,6 +53,7 @@ public final class Functions
     private abstract static class Layout implements AutoCloseable
     {
         private long correlationId;
+        private RingBuffer ring;
 
         public abstract AtomicBuffer getNukleus();
 
@@ -60,7 +61,10 @@ public final class Functions
 
         public final long nextCorrelationId()
         {
-            RingBuffer ring = new ManyToOneRingBuffer(getNukleus());
+            if (ring == null)
+            {
+                ring = new ManyToOneRingBuffer(getNukleus());
+            }
             correlationId = ring.nextCorrelationId();
             return correlationId;
         }
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static org.agrona.IoUtil.ensureDirectoryExists;
+import static org.agrona.IoUtil.mapNewFile;
+import static org.agrona.IoUtil.unmap;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.BitUtil;
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.reaktivity.specification.nukleus.internal.types.stream.FrameFW;
+
+public final class CaptureLog implements AutoCloseable
+{
+    static final int FIELD_OFFSET_TYPE_ID = 0;
+    static final int FIELD_OFFSET_LENGTH = FIELD_OFFSET_TYPE_ID + BitUtil.SIZE_OF_INT;
+    static final int FIELD_OFFSET_TIMESTAMP = FIELD_OFFSET_LENGTH + BitUtil.SIZE_OF_INT;
+    static final int FIELD_OFFSET_FRAME_TIMESTAMP = FIELD_OFFSET_TIMESTAMP + BitUtil.SIZE_OF_LONG;
+    static final int FIELD_OFFSET_ROUTE_ID = FIELD_OFFSET_FRAME_TIMESTAMP + BitUtil.SIZE_OF_LONG;
+    static final int FIELD_OFFSET_STREAM_ID = FIELD_OFFSET_ROUTE_ID + BitUtil.SIZE_OF_LONG;
+    static final int FIELD_OFFSET_SEQUENCE = FIELD_OFFSET_STREAM_ID + BitUtil.SIZE_OF_LONG;
+    static final int FIELD_OFFSET_ACKNOWLEDGE = FIELD_OFFSET_SEQUENCE + BitUtil.SIZE_OF_LONG;
+    static final int FIELD_OFFSET_TRACE_ID = FIELD_OFFSET_ACKNOWLEDGE + BitUtil.SIZE_OF_LONG;
+    static final int FIELD_OFFSET_AUTHORIZATION = FIELD_OFFSET_TRACE_ID + BitUtil.SIZE_OF_LONG;
+    static final int FIELD_OFFSET_MAXIMUM = FIELD_OFFSET_AUTHORIZATION + BitUtil.SIZE_OF_LONG;
+    static final int FIELD_OFFSET_PAYLOAD_LENGTH = FIELD_OFFSET_MAXIMUM + BitUtil.SIZE_OF_INT;
+    static final int FIELD_OFFSET_FLAGS = FIELD_OFFSET_PAYLOAD_LENGTH + BitUtil.SIZE_OF_INT;
+
+    public static final int RECORD_LENGTH =
+            BitUtil.align(FIELD_OFFSET_FLAGS + BitUtil.SIZE_OF_INT, BitUtil.SIZE_OF_LONG);
+
+    private final File directory;
+    private final int segmentLength;
+    private final int maxSegments;
+    private final UnsafeBuffer buffer;
+
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private int offset;
+
+    public CaptureLog(
+        File directory,
+        int segmentLength,
+        int maxSegments)
+    {
+        this.directory = directory;
+        this.segmentLength = segmentLength - segmentLength % RECORD_LENGTH;
+        this.maxSegments = maxSegments;
+        this.buffer = new UnsafeBuffer(0L, 0);
+        this.segmentIndex = -1L;
+
+        if (this.segmentLength == 0)
+        {
+            throw new IllegalArgumentException("segment length less than record length: " + segmentLength);
+        }
+
+        ensureDirectoryExists(directory, "capture");
+    }
+
+    public void append(
+        int typeId,
+        int length,
+        int payloadLength,
+        int flags,
+        long timestamp,
+        FrameFW frame)
+    {
+        if (offset == buffer.capacity())
+        {
+            roll();
+        }
+
+        final UnsafeBuffer buffer = this.buffer;
+        final int offset = this.offset;
+
+        buffer.putInt(offset + FIELD_OFFSET_LENGTH, length);
+        buffer.putLong(offset + FIELD_OFFSET_TIMESTAMP, timestamp);
+        buffer.putLong(offset + FIELD_OFFSET_FRAME_TIMESTAMP, frame.timestamp());
+        buffer.putLong(offset + FIELD_OFFSET_ROUTE_ID, frame.routeId());
+        buffer.putLong(offset + FIELD_OFFSET_STREAM_ID, frame.streamId());
+        buffer.putLong(offset + FIELD_OFFSET_SEQUENCE, frame.sequence());
+        buffer.putLong(offset + FIELD_OFFSET_ACKNOWLEDGE, frame.acknowledge());
+        buffer.putLong(offset + FIELD_OFFSET_TRACE_ID, frame.traceId());
+        buffer.putLong(offset + FIELD_OFFSET_AUTHORIZATION, frame.authorization());
+        buffer.putInt(offset + FIELD_OFFSET_MAXIMUM, frame.maximum());
+        buffer.putInt(offset + FIELD_OFFSET_PAYLOAD_LENGTH, payloadLength);
+        buffer.putInt(offset + FIELD_OFFSET_FLAGS, flags);
+        buffer.putIntOrdered(offset + FIELD_OFFSET_TYPE_ID, typeId);
+
+        this.offset = offset + RECORD_LENGTH;
+    }
+
+    public long segmentIndex()
+    {
+        return segmentIndex;
+    }
+
+    @Override
+    public void close()
+    {
+        if (segment != null)
+        {
+            unmap(segment);
+            segment = null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("CaptureLog [%s, segment=%d, offset=%d]", directory, segmentIndex, offset);
+    }
+
+    static File segmentFile(
+        File directory,
+        long segmentIndex)
+    {
+        return new File(directory, String.format("capture-%016x.log", segmentIndex));
+    }
+
+    private void roll()
+    {
+        close();
+
+        segmentIndex++;
+
+        if (maxSegments > 0 && segmentIndex >= maxSegments)
+        {
+            IoUtil.deleteIfExists(segmentFile(directory, segmentIndex - maxSegments));
+        }
+
+        segment = mapNewFile(segmentFile(directory, segmentIndex), segmentLength, false);
+        buffer.wrap(segment);
+        offset = 0;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static org.agrona.IoUtil.mapExistingFile;
+import static org.agrona.IoUtil.unmap;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.concurrent.UnsafeBuffer;
+
+public final class CaptureReader implements AutoCloseable
+{
+    private final File directory;
+    private final UnsafeBuffer buffer;
+
+    private MappedByteBuffer segment;
+    private long segmentIndex;
+    private int offset;
+    private int position;
+
+    public CaptureReader(
+        File directory)
+    {
+        this.directory = directory;
+        this.buffer = new UnsafeBuffer(0L, 0);
+        this.segmentIndex = firstSegmentIndex(directory);
+        this.offset = -CaptureLog.RECORD_LENGTH;
+    }
+
+    public boolean next()
+    {
+        int next = offset + CaptureLog.RECORD_LENGTH;
+
+        if (segment == null || next == buffer.capacity())
+        {
+            if (!nextSegment())
+            {
+                return false;
+            }
+            next = 0;
+        }
+
+        final boolean available = buffer.getIntVolatile(next + CaptureLog.FIELD_OFFSET_TYPE_ID) != 0;
+        if (available)
+        {
+            offset = next;
+            position++;
+        }
+        return available;
+    }
+
+    public int position()
+    {
+        return position;
+    }
+
+    public int typeId()
+    {
+        return buffer.getInt(offset + CaptureLog.FIELD_OFFSET_TYPE_ID);
+    }
+
+    public int length()
+    {
+        return buffer.getInt(offset + CaptureLog.FIELD_OFFSET_LENGTH);
+    }
+
+    public int payloadLength()
+    {
+        return buffer.getInt(offset + CaptureLog.FIELD_OFFSET_PAYLOAD_LENGTH);
+    }
+
+    public int flags()
+    {
+        return buffer.getInt(offset + CaptureLog.FIELD_OFFSET_FLAGS);
+    }
+
+    public long timestamp()
+    {
+        return buffer.getLong(offset + CaptureLog.FIELD_OFFSET_TIMESTAMP);
+    }
+
+    public long frameTimestamp()
+    {
+        return buffer.getLong(offset + CaptureLog.FIELD_OFFSET_FRAME_TIMESTAMP);
+    }
+
+    public long routeId()
+    {
+        return buffer.getLong(offset + CaptureLog.FIELD_OFFSET_ROUTE_ID);
+    }
+
+    public long streamId()
+    {
+        return buffer.getLong(offset + CaptureLog.FIELD_OFFSET_STREAM_ID);
+    }
+
+    public long sequence()
+    {
+        return buffer.getLong(offset + CaptureLog.FIELD_OFFSET_SEQUENCE);
+    }
+
+    public long acknowledge()
+    {
+        return buffer.getLong(offset + CaptureLog.FIELD_OFFSET_ACKNOWLEDGE);
+    }
+
+    public int maximum()
+    {
+        return buffer.getInt(offset + CaptureLog.FIELD_OFFSET_MAXIMUM);
+    }
+
+    public long traceId()
+    {
+        return buffer.getLong(offset + CaptureLog.FIELD_OFFSET_TRACE_ID);
+    }
+
+    public long authorization()
+    {
+        return buffer.getLong(offset + CaptureLog.FIELD_OFFSET_AUTHORIZATION);
+    }
+
+    @Override
+    public void close()
+    {
+        if (segment != null)
+        {
+            unmap(segment);
+            segment = null;
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("CaptureReader [%s, segment=%d, position=%d]", directory, segmentIndex, position);
+    }
+
+    private boolean nextSegment()
+    {
+        final long nextIndex = segment == null ? segmentIndex : segmentIndex + 1;
+        final File file = CaptureLog.segmentFile(directory, nextIndex);
+
+        boolean mapped = false;
+        if (file.exists())
+        {
+            close();
+            segment = mapExistingFile(file, "capture");
+            buffer.wrap(segment);
+            segmentIndex = nextIndex;
+            offset = -CaptureLog.RECORD_LENGTH;
+            mapped = true;
+        }
+        return mapped;
+    }
+
+    private static long firstSegmentIndex(
+        File directory)
+    {
+        long firstIndex = 0L;
+        final String[] names = directory.list((d, n) -> n.startsWith("capture-") && n.endsWith(".log"));
+        if (names != null && names.length != 0)
+        {
+            firstIndex = Long.MAX_VALUE;
+            for (String name : names)
+            {
+                final String hex = name.substring("capture-".length(), name.length() - ".log".length());
+                firstIndex = Math.min(firstIndex, Long.parseUnsignedLong(hex, 16));
+            }
+        }
+        return firstIndex;
+    }
+}
@@ -0,0 +1,540 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import java.nio.ByteBuffer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ErrorHandler;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.LongHashSet;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.SystemNanoClock;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.reaktivity.specification.nukleus.IdAllocator;
+import org.reaktivity.specification.nukleus.Payloads;
+import org.reaktivity.specification.nukleus.internal.types.stream.AbortFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.FlushFW;
+
+public final class CaptureReplayer implements Agent
+{
+    public enum Pacing
+    {
+        AS_RECORDED,
+        MAX_SPEED
+    }
+
+    private static final DirectBuffer EMPTY_BUFFER = new UnsafeBuffer(new byte[0]);
+
+    private static final long NO_ID = 0L;
+    private static final long UNSET = -1L;
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final AbortFW.Builder abortRW = new AbortFW.Builder();
+    private final FlushFW.Builder flushRW = new FlushFW.Builder();
+
+    private final CaptureReader reader;
+    private final RingBuffer streams;
+    private final NanoClock clock;
+    private final Long2LongHashMap streamIds;
+    private final Long2LongHashMap routeIds;
+    private final LongHashSet closedIds;
+    private final DirectBuffer payload;
+    private final int sizeofBegin;
+    private final int sizeofDataHeader;
+    private final int sizeofEnd;
+    private final int sizeofAbort;
+    private final int sizeofFlush;
+    private final int maxPayloadLength;
+
+    private Pacing pacing;
+    private int batchSize;
+    private long routeId;
+
+    private boolean pending;
+    private long startNanos;
+    private long startTimestamp;
+    private boolean frameTimestamps;
+    private long lastFrameTimestamp;
+
+    private volatile long frames;
+    private volatile long skipped;
+    private volatile boolean done;
+
+    public CaptureReplayer(
+        CaptureReader reader,
+        RingBuffer streams)
+    {
+        this(reader, streams, new SystemNanoClock());
+    }
+
+    public CaptureReplayer(
+        CaptureReader reader,
+        RingBuffer streams,
+        NanoClock clock)
+    {
+        this.reader = reader;
+        this.streams = streams;
+        this.clock = clock;
+        this.streamIds = new Long2LongHashMap(NO_ID);
+        this.routeIds = new Long2LongHashMap(NO_ID);
+        this.closedIds = new LongHashSet();
+
+        final MutableDirectBuffer scratch = new UnsafeBuffer(ByteBuffer.allocateDirect(streams.maxMsgLength()));
+        this.sizeofBegin = beginRW.wrap(scratch, 0, scratch.capacity())
+                                  .routeId(0L)
+                                  .streamId(0L)
+                                  .sequence(0L)
+                                  .acknowledge(0L)
+                                  .maximum(0)
+                                  .affinity(0L)
+                                  .extension(EMPTY_BUFFER, 0, 0)
+                                  .build()
+                                  .sizeof();
+        this.sizeofDataHeader = dataRW.wrap(scratch, 0, scratch.capacity())
+                                      .routeId(0L)
+                                      .streamId(0L)
+                                      .sequence(0L)
+                                      .acknowledge(0L)
+                                      .maximum(0)
+                                      .flags(0)
+                                      .budgetId(0L)
+                                      .reserved(0)
+                                      .extension(EMPTY_BUFFER, 0, 0)
+                                      .build()
+                                      .sizeof();
+        this.sizeofEnd = endRW.wrap(scratch, 0, scratch.capacity())
+                              .routeId(0L)
+                              .streamId(0L)
+                              .sequence(0L)
+                              .acknowledge(0L)
+                              .maximum(0)
+                              .extension(EMPTY_BUFFER, 0, 0)
+                              .build()
+                              .sizeof();
+        this.sizeofAbort = abortRW.wrap(scratch, 0, scratch.capacity())
+                                  .routeId(0L)
+                                  .streamId(0L)
+                                  .sequence(0L)
+                                  .acknowledge(0L)
+                                  .maximum(0)
+                                  .extension(EMPTY_BUFFER, 0, 0)
+                                  .build()
+                                  .sizeof();
+        this.sizeofFlush = flushRW.wrap(scratch, 0, scratch.capacity())
+                                  .routeId(0L)
+                                  .streamId(0L)
+                                  .sequence(0L)
+                                  .acknowledge(0L)
+                                  .maximum(0)
+                                  .budgetId(0L)
+                                  .reserved(0)
+                                  .extension(EMPTY_BUFFER, 0, 0)
+                                  .build()
+                                  .sizeof();
+        this.maxPayloadLength = streams.maxMsgLength() - sizeofDataHeader;
+        this.payload = Payloads.random(maxPayloadLength);
+        this.pacing = Pacing.MAX_SPEED;
+        this.batchSize = 64;
+        this.routeId = NO_ID;
+        this.startTimestamp = UNSET;
+    }
+
+    public CaptureReplayer pacing(
+        Pacing pacing)
+    {
+        this.pacing = pacing;
+        return this;
+    }
+
+    public CaptureReplayer batchSize(
+        int batchSize)
+    {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public CaptureReplayer routeId(
+        long routeId)
+    {
+        this.routeId = routeId;
+        return this;
+    }
+
+    public AgentRunner start(
+        IdleStrategy idleStrategy,
+        ErrorHandler errorHandler)
+    {
+        final AgentRunner runner = new AgentRunner(idleStrategy, errorHandler, null, this);
+        AgentRunner.startOnThread(runner);
+        return runner;
+    }
+
+    public long frames()
+    {
+        return frames;
+    }
+
+    public long skipped()
+    {
+        return skipped;
+    }
+
+    public boolean isDone()
+    {
+        return done;
+    }
+
+    @Override
+    public int doWork()
+    {
+        final long now = clock.nanoTime();
+
+        int workCount = 0;
+        int skipCount = 0;
+
+        while (workCount + skipCount < batchSize)
+        {
+            if (!pending)
+            {
+                if (!reader.next())
+                {
+                    done = true;
+                    break;
+                }
+                pending = true;
+                done = false;
+            }
+
+            if (startTimestamp == UNSET)
+            {
+                frameTimestamps = reader.frameTimestamp() != 0L;
+                startTimestamp = timestamp();
+                startNanos = now;
+            }
+
+            if (pacing == Pacing.AS_RECORDED && timestamp() - startTimestamp > now - startNanos)
+            {
+                break;
+            }
+
+            final int typeId = reader.typeId();
+            final int length = sizeof(typeId);
+            if (length == 0)
+            {
+                skipCount++;
+            }
+            else
+            {
+                final int index = streams.tryClaim(typeId, length);
+                if (index < 0)
+                {
+                    break;
+                }
+
+                replay(typeId, streams.buffer(), index, index + length);
+                streams.commit(index);
+                workCount++;
+            }
+
+            pending = false;
+        }
+
+        if (workCount != 0)
+        {
+            frames += workCount;
+        }
+
+        if (skipCount != 0)
+        {
+            skipped += skipCount;
+        }
+
+        return workCount + skipCount;
+    }
+
+    @Override
+    public void onClose()
+    {
+        reader.close();
+    }
+
+    @Override
+    public String roleName()
+    {
+        return "capture-replayer";
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s [pacing=%s, frames=%d, skipped=%d]", roleName(), pacing, frames, skipped);
+    }
+
+    private long timestamp()
+    {
+        long timestamp = reader.timestamp();
+
+        if (frameTimestamps)
+        {
+            final long frameTimestamp = reader.frameTimestamp();
+            if (frameTimestamp != 0L)
+            {
+                lastFrameTimestamp = frameTimestamp;
+            }
+            timestamp = lastFrameTimestamp;
+        }
+
+        return timestamp;
+    }
+
+    private int sizeof(
+        int typeId)
+    {
+        int length = 0;
+
+        switch (typeId)
+        {
+        case BeginFW.TYPE_ID:
+            length = sizeofBegin;
+            break;
+        case DataFW.TYPE_ID:
+            length = sizeofDataHeader + payloadLength();
+            break;
+        case EndFW.TYPE_ID:
+            length = sizeofEnd;
+            break;
+        case AbortFW.TYPE_ID:
+            length = sizeofAbort;
+            break;
+        case FlushFW.TYPE_ID:
+            length = sizeofFlush;
+            break;
+        default:
+            break;
+        }
+
+        return length;
+    }
+
+    private int payloadLength()
+    {
+        return Math.min(reader.payloadLength(), maxPayloadLength);
+    }
+
+    private void replay(
+        int typeId,
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        switch (typeId)
+        {
+        case BeginFW.TYPE_ID:
+            encodeBegin(buffer, offset, limit, mapRouteId(reader.routeId()), mapStreamId(reader.streamId()));
+            break;
+        case DataFW.TYPE_ID:
+            encodeData(buffer, offset, limit, mapRouteId(reader.routeId()), mapStreamId(reader.streamId()), payloadLength());
+            break;
+        case EndFW.TYPE_ID:
+            encodeEnd(buffer, offset, limit, mapRouteId(reader.routeId()), closeStreamId(reader.streamId()));
+            break;
+        case AbortFW.TYPE_ID:
+            encodeAbort(buffer, offset, limit, mapRouteId(reader.routeId()), closeStreamId(reader.streamId()));
+            break;
+        case FlushFW.TYPE_ID:
+            encodeFlush(buffer, offset, limit, mapRouteId(reader.routeId()), mapStreamId(reader.streamId()));
+            break;
+        default:
+            break;
+        }
+    }
+
+    private long mapRouteId(
+        long recordedId)
+    {
+        long mappedId = routeId;
+        if (mappedId == NO_ID)
+        {
+            mappedId = routeIds.get(recordedId);
+            if (mappedId == NO_ID)
+            {
+                mappedId = IdAllocator.current().nextId();
+                routeIds.put(recordedId, mappedId);
+            }
+        }
+        return mappedId;
+    }
+
+    private long mapStreamId(
+        long recordedId)
+    {
+        long mappedId = streamIds.get(recordedId);
+        if (mappedId == NO_ID)
+        {
+            final long initialId = streamIds.get(recordedId | 1L);
+            if ((recordedId & 1L) == 0L && initialId != NO_ID)
+            {
+                mappedId = IdAllocator.replyId(initialId);
+            }
+            else
+            {
+                mappedId = (recordedId & 1L) != 0L
+                        ? IdAllocator.current().nextInitialId()
+                        : IdAllocator.current().nextReplyId();
+            }
+            streamIds.put(recordedId, mappedId);
+        }
+        return mappedId;
+    }
+
+    private long closeStreamId(
+        long recordedId)
+    {
+        final long mappedId = mapStreamId(recordedId);
+        final long initialId = recordedId | 1L;
+        final long replyId = recordedId & ~1L;
+
+        closedIds.add(recordedId);
+        if (closedIds.contains(initialId) && closedIds.contains(replyId))
+        {
+            closedIds.remove(initialId);
+            closedIds.remove(replyId);
+            streamIds.remove(initialId);
+            streamIds.remove(replyId);
+        }
+
+        return mappedId;
+    }
+
+    private void encodeBegin(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit,
+        long routeId,
+        long streamId)
+    {
+        beginRW.wrap(buffer, offset, limit)
+               .routeId(routeId)
+               .streamId(streamId)
+               .sequence(reader.sequence())
+               .acknowledge(reader.acknowledge())
+               .maximum(reader.maximum())
+               .timestamp(reader.frameTimestamp())
+               .traceId(reader.traceId())
+               .authorization(reader.authorization())
+               .affinity(0L)
+               .extension(EMPTY_BUFFER, 0, 0)
+               .build();
+    }
+
+    private void encodeData(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit,
+        long routeId,
+        long streamId,
+        int payloadLength)
+    {
+        dataRW.wrap(buffer, offset, limit)
+              .routeId(routeId)
+              .streamId(streamId)
+              .sequence(reader.sequence())
+              .acknowledge(reader.acknowledge())
+              .maximum(reader.maximum())
+              .timestamp(reader.frameTimestamp())
+              .traceId(reader.traceId())
+              .authorization(reader.authorization())
+              .flags(reader.flags())
+              .budgetId(0L)
+              .reserved(payloadLength)
+              .payload(payload, 0, payloadLength)
+              .extension(EMPTY_BUFFER, 0, 0)
+              .build();
+    }
+
+    private void encodeEnd(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit,
+        long routeId,
+        long streamId)
+    {
+        endRW.wrap(buffer, offset, limit)
+             .routeId(routeId)
+             .streamId(streamId)
+             .sequence(reader.sequence())
+             .acknowledge(reader.acknowledge())
+             .maximum(reader.maximum())
+             .timestamp(reader.frameTimestamp())
+             .traceId(reader.traceId())
+             .authorization(reader.authorization())
+             .extension(EMPTY_BUFFER, 0, 0)
+             .build();
+    }
+
+    private void encodeAbort(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit,
+        long routeId,
+        long streamId)
+    {
+        abortRW.wrap(buffer, offset, limit)
+               .routeId(routeId)
+               .streamId(streamId)
+               .sequence(reader.sequence())
+               .acknowledge(reader.acknowledge())
+               .maximum(reader.maximum())
+               .timestamp(reader.frameTimestamp())
+               .traceId(reader.traceId())
+               .authorization(reader.authorization())
+               .extension(EMPTY_BUFFER, 0, 0)
+               .build();
+    }
+
+    private void encodeFlush(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit,
+        long routeId,
+        long streamId)
+    {
+        flushRW.wrap(buffer, offset, limit)
+               .routeId(routeId)
+               .streamId(streamId)
+               .sequence(reader.sequence())
+               .acknowledge(reader.acknowledge())
+               .maximum(reader.maximum())
+               .timestamp(reader.frameTimestamp())
+               .traceId(reader.traceId())
+               .authorization(reader.authorization())
+               .budgetId(0L)
+               .reserved(0)
+               .extension(EMPTY_BUFFER, 0, 0)
+               .build();
+    }
+}
@@ -21,45 +21,36 @@ import static org.agrona.IoUtil.unmap;
 import java.io.File;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
-import java.util.Random;
 
 import org.agrona.concurrent.AtomicBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
 import org.kaazing.k3po.lang.el.Function;
 import org.kaazing.k3po.lang.el.spi.FunctionMapperSpi;
+import org.reaktivity.specification.nukleus.IdAllocator;
 
 @Deprecated
 public final class Functions
 {
-    private static final Random RANDOM = new Random();
-
     @Function
     public static byte[] newReferenceId()
     {
         // positive
-        return longToBytesNative(RANDOM.nextLong() & 0x3fffffffffffffffL);
+        return longToBytesNative(IdAllocator.current().nextId());
     }
 
     @Function
     public static byte[] newInitialStreamId()
     {
         // odd, positive, non-zero
-        return longToBytesNative((RANDOM.nextLong() & 0x3fffffffffffffffL) | 0x0000000000000001L);
+        return longToBytesNative(IdAllocator.current().nextInitialId());
     }
 
     @Function
     public static byte[] newReplyStreamId()
     {
         // even, positive, non-zero
-        long value;
-        do
-        {
-            value = RANDOM.nextLong() & 0x3ffffffffffffffeL;
-        }
-        while (value == 0L);
-
-        return longToBytesNative(value);
+        return longToBytesNative(IdAllocator.current().nextReplyId());
     }
 
     @Function
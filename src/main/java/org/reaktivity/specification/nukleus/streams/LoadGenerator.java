@@ -0,0 +1,379 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static org.agrona.BitUtil.SIZE_OF_LONG;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ErrorHandler;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.NoOpIdleStrategy;
+import org.agrona.concurrent.SleepingIdleStrategy;
+import org.agrona.concurrent.SystemNanoClock;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.YieldingIdleStrategy;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.reaktivity.specification.nukleus.IdAllocator;
+import org.reaktivity.specification.nukleus.Payloads;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+
+public final class LoadGenerator implements Agent
+{
+    private static final DirectBuffer EMPTY_BUFFER = new UnsafeBuffer(new byte[0]);
+
+    private static final int FIELD_OFFSET_STREAM_ID = SIZE_OF_LONG;
+    private static final int FIELD_OFFSET_SEQUENCE = FIELD_OFFSET_STREAM_ID + SIZE_OF_LONG;
+
+    private final RingBuffer streams;
+    private final NanoClock clock;
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+
+    private long routeId;
+    private int streamCount;
+    private int payloadSize;
+    private int framesPerStream;
+    private long framesPerSecond;
+    private int batchSize;
+
+    private DirectBuffer payload;
+    private MutableDirectBuffer beginTemplate;
+    private MutableDirectBuffer dataTemplate;
+    private MutableDirectBuffer endTemplate;
+    private int sizeofBegin;
+    private int sizeofData;
+    private int sizeofEnd;
+
+    private long[] streamIds;
+    private long[] sequences;
+    private int[] remaining;
+    private int cursor;
+
+    private volatile long startNanos;
+    private volatile long frames;
+    private volatile long bytes;
+
+    public LoadGenerator(
+        RingBuffer streams)
+    {
+        this(streams, new SystemNanoClock());
+    }
+
+    public LoadGenerator(
+        RingBuffer streams,
+        NanoClock clock)
+    {
+        this.streams = streams;
+        this.clock = clock;
+        this.streamCount = 1;
+        this.payloadSize = 1024;
+        this.framesPerStream = 1;
+        this.batchSize = 64;
+    }
+
+    public LoadGenerator routeId(
+        long routeId)
+    {
+        this.routeId = routeId;
+        return this;
+    }
+
+    public LoadGenerator streams(
+        int streamCount)
+    {
+        this.streamCount = streamCount;
+        return this;
+    }
+
+    public LoadGenerator payloadSize(
+        int payloadSize)
+    {
+        this.payloadSize = payloadSize;
+        return this;
+    }
+
+    public LoadGenerator framesPerStream(
+        int framesPerStream)
+    {
+        this.framesPerStream = framesPerStream;
+        return this;
+    }
+
+    public LoadGenerator rate(
+        long framesPerSecond)
+    {
+        this.framesPerSecond = framesPerSecond;
+        return this;
+    }
+
+    public LoadGenerator batchSize(
+        int batchSize)
+    {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public AgentRunner start(
+        IdleStrategy idleStrategy,
+        ErrorHandler errorHandler)
+    {
+        final AgentRunner runner = new AgentRunner(idleStrategy, errorHandler, null, this);
+        AgentRunner.startOnThread(runner);
+        return runner;
+    }
+
+    public long frames()
+    {
+        return frames;
+    }
+
+    public long bytes()
+    {
+        return bytes;
+    }
+
+    public double framesPerSecond()
+    {
+        return perSecond(frames);
+    }
+
+    public double bytesPerSecond()
+    {
+        return perSecond(bytes);
+    }
+
+    @Override
+    public void onStart()
+    {
+        this.payload = Payloads.random(payloadSize);
+        this.beginTemplate = new ExpandableArrayBuffer(256);
+        this.dataTemplate = new ExpandableArrayBuffer(payloadSize + 256);
+        this.endTemplate = new ExpandableArrayBuffer(256);
+        this.sizeofBegin = encodeBegin(beginTemplate, 0, beginTemplate.capacity());
+        this.sizeofData = encodeData(dataTemplate, 0, dataTemplate.capacity());
+        this.sizeofEnd = encodeEnd(endTemplate, 0, endTemplate.capacity());
+
+        this.streamIds = new long[streamCount];
+        this.sequences = new long[streamCount];
+        this.remaining = new int[streamCount];
+        this.cursor = 0;
+
+        this.frames = 0L;
+        this.bytes = 0L;
+        this.startNanos = clock.nanoTime();
+    }
+
+    @Override
+    public int doWork()
+    {
+        int limit = batchSize;
+
+        if (framesPerSecond > 0L)
+        {
+            final long elapsedNanos = clock.nanoTime() - startNanos;
+            final long permitted = (long) (framesPerSecond * (elapsedNanos / 1e9)) - frames;
+            limit = (int) Math.max(0L, Math.min(limit, permitted));
+        }
+
+        int workCount = 0;
+        long bytesWritten = 0L;
+
+        while (workCount < limit)
+        {
+            final int written = writeFrame(cursor);
+            if (written == 0)
+            {
+                break;
+            }
+
+            bytesWritten += written;
+            workCount++;
+            cursor = cursor + 1 == streamCount ? 0 : cursor + 1;
+        }
+
+        if (workCount != 0)
+        {
+            frames += workCount;
+            bytes += bytesWritten;
+        }
+
+        return workCount;
+    }
+
+    @Override
+    public String roleName()
+    {
+        return "load-generator";
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s [frames=%d, bytes=%d, frames/s=%.0f, bytes/s=%.0f]",
+                roleName(), frames, bytes, framesPerSecond(), bytesPerSecond());
+    }
+
+    public static IdleStrategy idleStrategy(
+        String name)
+    {
+        switch (name)
+        {
+        case "noop":
+            return new NoOpIdleStrategy();
+        case "busy-spin":
+            return new BusySpinIdleStrategy();
+        case "yielding":
+            return new YieldingIdleStrategy();
+        case "sleeping":
+            return new SleepingIdleStrategy(MICROSECONDS.toNanos(100L));
+        case "backoff":
+            return new BackoffIdleStrategy(64L, 64L, MICROSECONDS.toNanos(1L), MICROSECONDS.toNanos(100L));
+        default:
+            throw new IllegalArgumentException("Unrecognized idle strategy: " + name);
+        }
+    }
+
+    private int writeFrame(
+        int index)
+    {
+        final long streamId = streamIds[index];
+
+        int written = 0;
+
+        if (streamId == 0L)
+        {
+            final int claimIndex = streams.tryClaim(BeginFW.TYPE_ID, sizeofBegin);
+            if (claimIndex >= 0)
+            {
+                final long newStreamId = IdAllocator.current().nextInitialId();
+                writeTemplate(beginTemplate, sizeofBegin, claimIndex, newStreamId, 0L);
+                streamIds[index] = newStreamId;
+                sequences[index] = 0L;
+                remaining[index] = framesPerStream;
+                written = sizeofBegin;
+            }
+        }
+        else if (remaining[index] > 0)
+        {
+            final long sequence = sequences[index];
+            final int claimIndex = streams.tryClaim(DataFW.TYPE_ID, sizeofData);
+            if (claimIndex >= 0)
+            {
+                writeTemplate(dataTemplate, sizeofData, claimIndex, streamId, sequence);
+                sequences[index] = sequence + payloadSize;
+                remaining[index]--;
+                written = sizeofData;
+            }
+        }
+        else
+        {
+            final int claimIndex = streams.tryClaim(EndFW.TYPE_ID, sizeofEnd);
+            if (claimIndex >= 0)
+            {
+                writeTemplate(endTemplate, sizeofEnd, claimIndex, streamId, sequences[index]);
+                streamIds[index] = 0L;
+                written = sizeofEnd;
+            }
+        }
+
+        return written;
+    }
+
+    private void writeTemplate(
+        DirectBuffer template,
+        int length,
+        int claimIndex,
+        long streamId,
+        long sequence)
+    {
+        final MutableDirectBuffer buffer = streams.buffer();
+        buffer.putBytes(claimIndex, template, 0, length);
+        buffer.putLong(claimIndex + FIELD_OFFSET_STREAM_ID, streamId);
+        buffer.putLong(claimIndex + FIELD_OFFSET_SEQUENCE, sequence);
+        streams.commit(claimIndex);
+    }
+
+    private int encodeBegin(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        return beginRW.wrap(buffer, offset, limit)
+                      .routeId(routeId)
+                      .streamId(0L)
+                      .sequence(0L)
+                      .acknowledge(0L)
+                      .maximum(0)
+                      .affinity(0L)
+                      .extension(EMPTY_BUFFER, 0, 0)
+                      .build()
+                      .sizeof();
+    }
+
+    private int encodeData(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        return dataRW.wrap(buffer, offset, limit)
+                     .routeId(routeId)
+                     .streamId(0L)
+                     .sequence(0L)
+                     .acknowledge(0L)
+                     .maximum(0)
+                     .flags(0x03)
+                     .budgetId(0L)
+                     .reserved(payloadSize)
+                     .payload(payload, 0, payloadSize)
+                     .extension(EMPTY_BUFFER, 0, 0)
+                     .build()
+                     .sizeof();
+    }
+
+    private int encodeEnd(
+        MutableDirectBuffer buffer,
+        int offset,
+        int limit)
+    {
+        return endRW.wrap(buffer, offset, limit)
+                    .routeId(routeId)
+                    .streamId(0L)
+                    .sequence(0L)
+                    .acknowledge(0L)
+                    .maximum(0)
+                    .extension(EMPTY_BUFFER, 0, 0)
+                    .build()
+                    .sizeof();
+    }
+
+    private double perSecond(
+        long count)
+    {
+        final long elapsedNanos = clock.nanoTime() - startNanos;
+        return elapsedNanos > 0L ? count * 1e9 / elapsedNanos : 0.0;
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static org.agrona.IoUtil.mapExistingFile;
+import static org.agrona.IoUtil.unmap;
+
+import java.io.File;
+import java.nio.MappedByteBuffer;
+
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+
+public final class StreamsLayout implements AutoCloseable
+{
+    private final MappedByteBuffer byteBuffer;
+    private final AtomicBuffer streamsBuffer;
+    private final AtomicBuffer throttleBuffer;
+
+    private RingBuffer streams;
+    private RingBuffer throttle;
+
+    public StreamsLayout(
+        File location,
+        int streamsCapacity,
+        int throttleCapacity)
+    {
+        File absolute = location.getAbsoluteFile();
+        int streamsLength = streamsCapacity + RingBufferDescriptor.TRAILER_LENGTH;
+        int throttleLength = throttleCapacity + RingBufferDescriptor.TRAILER_LENGTH;
+        this.byteBuffer = mapExistingFile(absolute, location.getAbsolutePath());
+        this.streamsBuffer = new UnsafeBuffer(byteBuffer, 0, streamsLength);
+        this.throttleBuffer = new UnsafeBuffer(byteBuffer, streamsLength, throttleLength);
+    }
+
+    public AtomicBuffer streamsBuffer()
+    {
+        return streamsBuffer;
+    }
+
+    public AtomicBuffer throttleBuffer()
+    {
+        return throttleBuffer;
+    }
+
+    public RingBuffer streams()
+    {
+        if (streams == null)
+        {
+            streams = new ManyToOneRingBuffer(streamsBuffer);
+        }
+        return streams;
+    }
+
+    public RingBuffer throttle()
+    {
+        if (throttle == null)
+        {
+            throttle = new ManyToOneRingBuffer(throttleBuffer);
+        }
+        return throttle;
+    }
+
+    @Override
+    public void close()
+    {
+        unmap(byteBuffer);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("StreamsLayout [streams=%d, throttle=%d]", streamsBuffer.capacity(), throttleBuffer.capacity());
+    }
+}
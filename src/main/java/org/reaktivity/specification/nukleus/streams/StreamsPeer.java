@@ -0,0 +1,657 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import java.nio.ByteBuffer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ErrorHandler;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AgentRunner;
+import org.agrona.concurrent.IdleStrategy;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.reaktivity.specification.nukleus.internal.types.Flyweight;
+import org.reaktivity.specification.nukleus.internal.types.OctetsFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.AbortFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BatchFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.FrameFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.ResetFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.WindowFW;
+
+public final class StreamsPeer implements Agent
+{
+    public enum Mode
+    {
+        SINK,
+        ECHO,
+        FIXED
+    }
+
+    private static final DirectBuffer EMPTY_BUFFER = new UnsafeBuffer(new byte[0]);
+
+    private static final long NO_STREAM = -1L;
+
+    private final FrameFW frameRO = new FrameFW();
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+    private final BatchFW batchRO = new BatchFW();
+    private final WindowFW windowRO = new WindowFW();
+
+    private final BeginFW.Builder beginRW = new BeginFW.Builder();
+    private final DataFW.Builder dataRW = new DataFW.Builder();
+    private final BatchFW.Builder batchRW = new BatchFW.Builder();
+    private final EndFW.Builder endRW = new EndFW.Builder();
+    private final AbortFW.Builder abortRW = new AbortFW.Builder();
+    private final WindowFW.Builder windowRW = new WindowFW.Builder();
+    private final ResetFW.Builder resetRW = new ResetFW.Builder();
+
+    private final RingBuffer streams;
+    private final RingBuffer throttle;
+    private final RingBuffer replies;
+    private final MutableDirectBuffer writeBuffer;
+    private final Long2LongHashMap sequences;
+    private final Long2LongHashMap acknowledges;
+    private final Long2LongHashMap replySequences;
+    private final Long2LongHashMap replyLimits;
+    private final Long2LongHashMap pendingWindows;
+    private final MessageHandler onFrame;
+
+    private Mode mode;
+    private int maximum;
+    private int threshold;
+    private long budgetId;
+    private int padding;
+    private int minimum;
+    private int capabilities;
+    private int readLimit;
+
+    private volatile long frames;
+    private volatile long windows;
+    private volatile long resets;
+    private volatile long failedWrites;
+
+    public StreamsPeer(
+        RingBuffer streams,
+        RingBuffer throttle)
+    {
+        this(streams, throttle, null);
+    }
+
+    public StreamsPeer(
+        RingBuffer streams,
+        RingBuffer throttle,
+        RingBuffer replies)
+    {
+        this.streams = streams;
+        this.throttle = throttle;
+        this.replies = replies;
+        this.writeBuffer = new UnsafeBuffer(ByteBuffer.allocateDirect(streams.maxMsgLength()));
+        this.sequences = new Long2LongHashMap(NO_STREAM);
+        this.acknowledges = new Long2LongHashMap(NO_STREAM);
+        this.replySequences = new Long2LongHashMap(NO_STREAM);
+        this.replyLimits = new Long2LongHashMap(NO_STREAM);
+        this.pendingWindows = new Long2LongHashMap(NO_STREAM);
+        this.onFrame = this::onFrame;
+        this.mode = Mode.SINK;
+        this.maximum = 64 * 1024;
+        this.threshold = maximum / 2;
+        this.readLimit = 64;
+    }
+
+    public StreamsPeer mode(
+        Mode mode)
+    {
+        if (mode == Mode.ECHO && replies == null)
+        {
+            throw new IllegalStateException("echo mode requires a replies ring buffer");
+        }
+        this.mode = mode;
+        return this;
+    }
+
+    public StreamsPeer window(
+        int maximum)
+    {
+        this.maximum = maximum;
+        this.threshold = maximum / 2;
+        return this;
+    }
+
+    public StreamsPeer threshold(
+        int threshold)
+    {
+        this.threshold = threshold;
+        return this;
+    }
+
+    public StreamsPeer budgetId(
+        long budgetId)
+    {
+        this.budgetId = budgetId;
+        return this;
+    }
+
+    public StreamsPeer padding(
+        int padding)
+    {
+        this.padding = padding;
+        return this;
+    }
+
+    public StreamsPeer minimum(
+        int minimum)
+    {
+        this.minimum = minimum;
+        return this;
+    }
+
+    public StreamsPeer capabilities(
+        int capabilities)
+    {
+        this.capabilities = capabilities;
+        return this;
+    }
+
+    public StreamsPeer readLimit(
+        int readLimit)
+    {
+        this.readLimit = readLimit;
+        return this;
+    }
+
+    public AgentRunner start(
+        IdleStrategy idleStrategy,
+        ErrorHandler errorHandler)
+    {
+        final AgentRunner runner = new AgentRunner(idleStrategy, errorHandler, null, this);
+        AgentRunner.startOnThread(runner);
+        return runner;
+    }
+
+    public long frames()
+    {
+        return frames;
+    }
+
+    public long windows()
+    {
+        return windows;
+    }
+
+    public long resets()
+    {
+        return resets;
+    }
+
+    public long failedWrites()
+    {
+        return failedWrites;
+    }
+
+    public int pendingWindows()
+    {
+        return pendingWindows.size();
+    }
+
+    public int streamCount()
+    {
+        return sequences.size();
+    }
+
+    public int replyCount()
+    {
+        return replySequences.size();
+    }
+
+    @Override
+    public int doWork()
+    {
+        int workCount = 0;
+
+        if (!pendingWindows.isEmpty())
+        {
+            workCount += retryWindows();
+        }
+
+        workCount += streams.read(onFrame, readLimit);
+
+        return workCount;
+    }
+
+    @Override
+    public String roleName()
+    {
+        return "streams-peer";
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s [mode=%s, streams=%d, frames=%d, windows=%d, resets=%d, failedWrites=%d]",
+                roleName(), mode, sequences.size(), frames, windows, resets, failedWrites);
+    }
+
+    private void onFrame(
+        int msgTypeId,
+        MutableDirectBuffer buffer,
+        int index,
+        int length)
+    {
+        frames++;
+
+        switch (msgTypeId)
+        {
+        case BeginFW.TYPE_ID:
+            onBegin(beginRO.wrap(buffer, index, index + length));
+            break;
+        case DataFW.TYPE_ID:
+            onData(dataRO.wrap(buffer, index, index + length));
+            break;
+        case BatchFW.TYPE_ID:
+            onBatch(batchRO.wrap(buffer, index, index + length));
+            break;
+        case EndFW.TYPE_ID:
+        case AbortFW.TYPE_ID:
+            onEnd(msgTypeId, frameRO.wrap(buffer, index, index + length));
+            break;
+        case WindowFW.TYPE_ID:
+            onReplyWindow(windowRO.wrap(buffer, index, index + length));
+            break;
+        case ResetFW.TYPE_ID:
+            onReplyReset(frameRO.wrap(buffer, index, index + length));
+            break;
+        default:
+            break;
+        }
+    }
+
+    private void onBegin(
+        BeginFW begin)
+    {
+        final long routeId = begin.routeId();
+        final long streamId = begin.streamId();
+        final long sequence = begin.sequence();
+
+        sequences.put(streamId, sequence);
+        acknowledges.put(streamId, sequence);
+
+        if (mode == Mode.ECHO)
+        {
+            final long replyId = streamId ^ 1L;
+            replySequences.put(replyId, 0L);
+            replyLimits.put(replyId, 0L);
+            final BeginFW reply = beginRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                         .routeId(routeId)
+                                         .streamId(replyId)
+                                         .sequence(0L)
+                                         .acknowledge(0L)
+                                         .maximum(0)
+                                         .traceId(begin.traceId())
+                                         .affinity(begin.affinity())
+                                         .extension(EMPTY_BUFFER, 0, 0)
+                                         .build();
+            doReply(BeginFW.TYPE_ID, reply.sizeof());
+        }
+        else if (!doWindow(routeId, streamId, sequence, sequence, maximum, begin.traceId()))
+        {
+            pendingWindows.put(streamId, routeId);
+        }
+    }
+
+    private void onData(
+        DataFW data)
+    {
+        if (onReserved(data.routeId(), data.streamId(), data.sequence(), data.reserved(), data.traceId()) &&
+            mode == Mode.ECHO)
+        {
+            doEcho(data);
+        }
+    }
+
+    private void onBatch(
+        BatchFW batch)
+    {
+        if (onReserved(batch.routeId(), batch.streamId(), batch.sequence(), batch.reserved(), batch.traceId()) &&
+            mode == Mode.ECHO)
+        {
+            doEchoBatch(batch);
+        }
+    }
+
+    private boolean onReserved(
+        long routeId,
+        long streamId,
+        long frameSequence,
+        int reserved,
+        long traceId)
+    {
+        final long acknowledge = acknowledges.get(streamId);
+        final long sequence = frameSequence + reserved;
+
+        boolean accepted = false;
+
+        if (acknowledge == NO_STREAM)
+        {
+            doReset(routeId, streamId, frameSequence, traceId);
+        }
+        else if (mode == Mode.ECHO)
+        {
+            final long replyId = streamId ^ 1L;
+            final long replySequence = replySequences.get(replyId);
+
+            if (replySequence + reserved > replyLimits.get(replyId))
+            {
+                doReset(routeId, streamId, frameSequence, traceId);
+            }
+            else
+            {
+                sequences.put(streamId, sequence);
+                accepted = true;
+            }
+        }
+        else if (sequence > acknowledge + maximum)
+        {
+            doReset(routeId, streamId, frameSequence, traceId);
+        }
+        else
+        {
+            sequences.put(streamId, sequence);
+            accepted = true;
+
+            if (mode != Mode.FIXED && sequence - acknowledge >= threshold && !pendingWindows.containsKey(streamId))
+            {
+                if (doWindow(routeId, streamId, sequence, sequence, maximum, traceId))
+                {
+                    acknowledges.put(streamId, sequence);
+                }
+                else
+                {
+                    pendingWindows.put(streamId, routeId);
+                }
+            }
+        }
+
+        return accepted;
+    }
+
+    private void onEnd(
+        int msgTypeId,
+        FrameFW frame)
+    {
+        final long streamId = frame.streamId();
+
+        if (sequences.remove(streamId) != NO_STREAM)
+        {
+            acknowledges.remove(streamId);
+            pendingWindows.remove(streamId);
+
+            if (mode == Mode.ECHO)
+            {
+                doEchoEnd(msgTypeId, frame.routeId(), streamId, frame.traceId());
+            }
+        }
+    }
+
+    private void onReplyWindow(
+        WindowFW window)
+    {
+        final long replyId = window.streamId();
+        final long replySequence = replySequences.get(replyId);
+
+        if (replySequence != NO_STREAM)
+        {
+            final long replyAcknowledge = window.acknowledge();
+            final int replyMaximum = window.maximum();
+            replyLimits.put(replyId, replyAcknowledge + replyMaximum);
+
+            final long streamId = replyId ^ 1L;
+            final long sequence = sequences.get(streamId);
+            if (sequence != NO_STREAM)
+            {
+                final long acknowledge = sequence - replySequence + replyAcknowledge;
+                if (doWindow(window.routeId(), streamId, sequence, acknowledge, replyMaximum, window.traceId()))
+                {
+                    acknowledges.put(streamId, acknowledge);
+                }
+            }
+        }
+    }
+
+    private void onReplyReset(
+        FrameFW reset)
+    {
+        final long replyId = reset.streamId();
+
+        if (replySequences.remove(replyId) != NO_STREAM)
+        {
+            replyLimits.remove(replyId);
+
+            final long streamId = replyId ^ 1L;
+            final long sequence = sequences.get(streamId);
+            if (sequence != NO_STREAM)
+            {
+                doReset(reset.routeId(), streamId, sequence, reset.traceId());
+            }
+        }
+    }
+
+    private void doEcho(
+        DataFW data)
+    {
+        final long replyId = data.streamId() ^ 1L;
+        final long replySequence = replySequences.get(replyId);
+        final DirectBuffer payload = data.payload() != null ? data.payload().buffer() : EMPTY_BUFFER;
+        final int payloadOffset = data.payload() != null ? data.payload().offset() : 0;
+        final int payloadLength = Math.max(data.length(), 0);
+
+        final DataFW reply = dataRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                   .routeId(data.routeId())
+                                   .streamId(replyId)
+                                   .sequence(replySequence)
+                                   .acknowledge(0L)
+                                   .maximum(0)
+                                   .traceId(data.traceId())
+                                   .flags(data.flags())
+                                   .budgetId(0L)
+                                   .reserved(data.reserved())
+                                   .payload(payload, payloadOffset, payloadLength)
+                                   .extension(EMPTY_BUFFER, 0, 0)
+                                   .build();
+
+        if (doReply(DataFW.TYPE_ID, reply.sizeof()))
+        {
+            replySequences.put(replyId, replySequence + data.reserved());
+        }
+    }
+
+    private void doEchoBatch(
+        BatchFW batch)
+    {
+        final long replyId = batch.streamId() ^ 1L;
+        final long replySequence = replySequences.get(replyId);
+        final OctetsFW segments = batch.segments();
+        final DirectBuffer segmentsBuffer = segments != null ? segments.buffer() : EMPTY_BUFFER;
+        final int segmentsOffset = segments != null ? segments.offset() : 0;
+        final int segmentsLength = segments != null ? segments.sizeof() : 0;
+
+        final BatchFW reply = batchRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                     .routeId(batch.routeId())
+                                     .streamId(replyId)
+                                     .sequence(replySequence)
+                                     .acknowledge(0L)
+                                     .maximum(0)
+                                     .traceId(batch.traceId())
+                                     .flags(batch.flags())
+                                     .budgetId(0L)
+                                     .reserved(batch.reserved())
+                                     .count(batch.count())
+                                     .segments(segmentsBuffer, segmentsOffset, segmentsLength)
+                                     .extension(EMPTY_BUFFER, 0, 0)
+                                     .build();
+
+        if (doReply(BatchFW.TYPE_ID, reply.sizeof()))
+        {
+            replySequences.put(replyId, replySequence + batch.reserved());
+        }
+    }
+
+    private void doEchoEnd(
+        int msgTypeId,
+        long routeId,
+        long streamId,
+        long traceId)
+    {
+        final long replyId = streamId ^ 1L;
+        final long replySequence = replySequences.remove(replyId);
+
+        if (replySequence != NO_STREAM)
+        {
+            replyLimits.remove(replyId);
+
+            final Flyweight reply = msgTypeId == EndFW.TYPE_ID ?
+                endRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                     .routeId(routeId)
+                     .streamId(replyId)
+                     .sequence(replySequence)
+                     .acknowledge(0L)
+                     .maximum(0)
+                     .traceId(traceId)
+                     .extension(EMPTY_BUFFER, 0, 0)
+                     .build() :
+                abortRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                       .routeId(routeId)
+                       .streamId(replyId)
+                       .sequence(replySequence)
+                       .acknowledge(0L)
+                       .maximum(0)
+                       .traceId(traceId)
+                       .extension(EMPTY_BUFFER, 0, 0)
+                       .build();
+
+            doReply(msgTypeId, reply.sizeof());
+        }
+    }
+
+    private boolean doReply(
+        int msgTypeId,
+        int length)
+    {
+        final boolean written = replies.write(msgTypeId, writeBuffer, 0, length);
+        if (!written)
+        {
+            failedWrites++;
+        }
+        return written;
+    }
+
+    private int retryWindows()
+    {
+        int workCount = 0;
+
+        for (final Long2LongHashMap.KeyIterator i = pendingWindows.keySet().iterator(); i.hasNext(); )
+        {
+            final long streamId = i.nextValue();
+            final long routeId = pendingWindows.get(streamId);
+            final long sequence = sequences.get(streamId);
+
+            if (!doWindow(routeId, streamId, sequence, sequence, maximum, 0L))
+            {
+                break;
+            }
+
+            acknowledges.put(streamId, sequence);
+            i.remove();
+            workCount++;
+        }
+
+        return workCount;
+    }
+
+    private boolean doWindow(
+        long routeId,
+        long streamId,
+        long sequence,
+        long acknowledge,
+        int maximum,
+        long traceId)
+    {
+        final WindowFW window = windowRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                        .routeId(routeId)
+                                        .streamId(streamId)
+                                        .sequence(sequence)
+                                        .acknowledge(acknowledge)
+                                        .maximum(maximum)
+                                        .traceId(traceId)
+                                        .budgetId(budgetId)
+                                        .padding(padding)
+                                        .minimum(minimum)
+                                        .capabilities(capabilities)
+                                        .build();
+
+        final boolean written = throttle.write(WindowFW.TYPE_ID, writeBuffer, 0, window.sizeof());
+        if (written)
+        {
+            windows++;
+        }
+        else
+        {
+            failedWrites++;
+        }
+        return written;
+    }
+
+    private void doReset(
+        long routeId,
+        long streamId,
+        long sequence,
+        long traceId)
+    {
+        sequences.remove(streamId);
+        acknowledges.remove(streamId);
+        pendingWindows.remove(streamId);
+
+        if (mode == Mode.ECHO)
+        {
+            doEchoEnd(AbortFW.TYPE_ID, routeId, streamId, traceId);
+        }
+
+        final ResetFW reset = resetRW.wrap(writeBuffer, 0, writeBuffer.capacity())
+                                     .routeId(routeId)
+                                     .streamId(streamId)
+                                     .sequence(sequence)
+                                     .acknowledge(sequence)
+                                     .maximum(0)
+                                     .traceId(traceId)
+                                     .extension(EMPTY_BUFFER, 0, 0)
+                                     .build();
+
+        if (throttle.write(ResetFW.TYPE_ID, writeBuffer, 0, reset.sizeof()))
+        {
+            resets++;
+        }
+        else
+        {
+            failedWrites++;
+        }
+    }
+}
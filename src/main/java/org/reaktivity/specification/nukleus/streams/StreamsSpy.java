@@ -0,0 +1,176 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static org.agrona.BitUtil.align;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.ALIGNMENT;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.HEADER_LENGTH;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.encodedMsgOffset;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.lengthOffset;
+import static org.agrona.concurrent.ringbuffer.RecordDescriptor.typeOffset;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.Agent;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.NanoClock;
+import org.agrona.concurrent.SystemNanoClock;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.FrameFW;
+
+public final class StreamsSpy implements Agent
+{
+    private static final int HEADER_CAPACITY = 128;
+
+    private final FrameFW frameRO = new FrameFW();
+    private final DataFW dataRO = new DataFW();
+    private final MutableDirectBuffer header = new UnsafeBuffer(new byte[HEADER_CAPACITY]);
+
+    private final AtomicBuffer buffer;
+    private final RingBuffer ring;
+    private final CaptureLog capture;
+    private final NanoClock clock;
+    private final int capacity;
+    private final int mask;
+
+    private long position;
+    private int readLimit;
+
+    private volatile long frames;
+    private volatile long droppedBytes;
+
+    public StreamsSpy(
+        AtomicBuffer buffer,
+        CaptureLog capture)
+    {
+        this(buffer, capture, new SystemNanoClock());
+    }
+
+    public StreamsSpy(
+        AtomicBuffer buffer,
+        CaptureLog capture,
+        NanoClock clock)
+    {
+        this.buffer = buffer;
+        this.ring = new ManyToOneRingBuffer(buffer);
+        this.capture = capture;
+        this.clock = clock;
+        this.capacity = ring.capacity();
+        this.mask = capacity - 1;
+        this.position = ring.consumerPosition();
+        this.readLimit = 256;
+    }
+
+    public StreamsSpy readLimit(
+        int readLimit)
+    {
+        this.readLimit = readLimit;
+        return this;
+    }
+
+    public long frames()
+    {
+        return frames;
+    }
+
+    public long droppedBytes()
+    {
+        return droppedBytes;
+    }
+
+    @Override
+    public int doWork()
+    {
+        final long consumerPosition = ring.consumerPosition();
+        if (consumerPosition > position)
+        {
+            droppedBytes += consumerPosition - position;
+            position = consumerPosition;
+        }
+
+        final long producerPosition = ring.producerPosition();
+        final long timestamp = clock.nanoTime();
+        int workCount = 0;
+
+        while (position < producerPosition && workCount < readLimit)
+        {
+            final int index = (int) position & mask;
+            final int recordLength = buffer.getIntVolatile(lengthOffset(index));
+            if (recordLength <= 0)
+            {
+                break;
+            }
+
+            final int msgTypeId = buffer.getInt(typeOffset(index));
+            final int length = recordLength - HEADER_LENGTH;
+            final int headerLength = Math.min(length, header.capacity());
+            buffer.getBytes(encodedMsgOffset(index), header, 0, headerLength);
+            final DataFW data = msgTypeId == DataFW.TYPE_ID ? tryWrapData(index, length) : null;
+            final int payloadLength = data != null ? Math.max(data.length(), 0) : 0;
+            final int flags = data != null ? data.flags() : 0;
+
+            if (buffer.getIntVolatile(lengthOffset(index)) != recordLength ||
+                buffer.getInt(typeOffset(index)) != msgTypeId ||
+                ring.consumerPosition() > position)
+            {
+                break;
+            }
+
+            if (msgTypeId != ManyToOneRingBuffer.PADDING_MSG_TYPE_ID)
+            {
+                capture.append(msgTypeId, length, payloadLength, flags, timestamp, frameRO.wrap(header, 0, headerLength));
+                workCount++;
+            }
+
+            position += align(recordLength, ALIGNMENT);
+        }
+
+        if (workCount != 0)
+        {
+            frames += workCount;
+        }
+
+        return workCount;
+    }
+
+    @Override
+    public void onClose()
+    {
+        capture.close();
+    }
+
+    @Override
+    public String roleName()
+    {
+        return "streams-spy";
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s [position=%d, frames=%d, droppedBytes=%d]", roleName(), position, frames, droppedBytes);
+    }
+
+    private DataFW tryWrapData(
+        int index,
+        int length)
+    {
+        final int offset = encodedMsgOffset(index);
+        return dataRO.tryWrap(buffer, offset, offset + length);
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BudgetPoolTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldShareCreditAcrossMappings() throws Exception
+    {
+        final File location = new File(folder.getRoot(), "budgets/example");
+
+        try (BudgetPool creditor = BudgetPool.create(location, 4);
+             BudgetPool debitor = BudgetPool.map(location))
+        {
+            assertTrue(creditor.attach(1L));
+            assertFalse(debitor.attach(1L));
+            assertEquals(1L, debitor.attached());
+
+            assertEquals(100L, creditor.credit(1L, 100L));
+            assertEquals(60L, debitor.debit(1L, 40L));
+            assertEquals(BudgetPool.NO_CREDIT, debitor.debit(1L, 61L));
+            assertEquals(60L, creditor.available(1L));
+
+            assertEquals(100L, debitor.credit(1L, 40L));
+        }
+    }
+
+    @Test
+    public void shouldClaimWithPaddingAndMinimum() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            budgets.attach(1L);
+            budgets.credit(1L, 100L);
+
+            assertEquals(30, budgets.claim(1L, 10, 0, 30));
+            assertEquals(60L, budgets.available(1L));
+
+            assertEquals(0, budgets.claim(1L, 10, 51, 64));
+            assertEquals(60L, budgets.available(1L));
+
+            assertEquals(50, budgets.claim(1L, 10, 50, 64));
+            assertEquals(0L, budgets.available(1L));
+
+            assertEquals(0, budgets.claim(1L, 0, 0, 64));
+        }
+    }
+
+    @Test
+    public void shouldResolveCollidingBudgetIds() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 2))
+        {
+            assertTrue(budgets.attach(1L));
+            assertTrue(budgets.attach(3L));
+
+            budgets.credit(3L, 8L);
+
+            assertEquals(0L, budgets.available(1L));
+            assertEquals(8L, budgets.available(3L));
+            assertEquals(BudgetPool.NO_CREDIT, budgets.available(5L));
+        }
+    }
+
+    @Test
+    public void shouldNotOverdrawWhenStreamsFanIn() throws Exception
+    {
+        final int streams = 4;
+        final AtomicLong claimed = new AtomicLong();
+
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            budgets.attach(1L);
+            budgets.credit(1L, 100_000L);
+
+            final Thread[] threads = new Thread[streams];
+            for (int i = 0; i < streams; i++)
+            {
+                threads[i] = new Thread(() ->
+                {
+                    int length;
+                    while ((length = budgets.claim(1L, 3, 0, 97)) != 0)
+                    {
+                        claimed.addAndGet(length + 3);
+                    }
+                });
+                threads[i].start();
+            }
+
+            for (Thread thread : threads)
+            {
+                thread.join();
+            }
+
+            assertEquals(100_000L, claimed.get() + budgets.available(1L));
+            assertTrue(budgets.available(1L) <= 3L);
+        }
+    }
+
+    @Test
+    public void shouldNotOverdrawWhenMappingsFanIn() throws Exception
+    {
+        final File location = new File(folder.getRoot(), "budgets/example");
+        final int streams = 4;
+        final int frames = 1_000;
+        final AtomicLong claimed = new AtomicLong();
+
+        try (BudgetPool creditor = BudgetPool.create(location, 16))
+        {
+            creditor.attach(1L);
+
+            final Thread[] threads = new Thread[streams];
+            for (int i = 0; i < streams; i++)
+            {
+                threads[i] = new Thread(() ->
+                {
+                    try (BudgetPool debitor = BudgetPool.map(location))
+                    {
+                        for (int frame = 0; frame < frames; )
+                        {
+                            final int length = debitor.claim(1L, 3, 5, 13);
+                            if (length != 0)
+                            {
+                                claimed.addAndGet(length + 3);
+                                frame++;
+                            }
+                            else
+                            {
+                                Thread.yield();
+                            }
+                        }
+                    }
+                });
+                threads[i].start();
+            }
+
+            long credited = 0L;
+            for (Thread thread : threads)
+            {
+                while (thread.isAlive())
+                {
+                    if (creditor.available(1L) < 256L)
+                    {
+                        creditor.credit(1L, 256L);
+                        credited += 256L;
+                    }
+                    assertTrue(creditor.available(1L) >= 0L);
+                    Thread.yield();
+                }
+                thread.join();
+            }
+
+            assertEquals(credited, claimed.get() + creditor.available(1L));
+        }
+    }
+
+    @Test
+    public void shouldDetachAndReuseBudgetEntry() throws Exception
+    {
+        final File location = new File(folder.getRoot(), "budgets/example");
+
+        try (BudgetPool creditor = BudgetPool.create(location, 1);
+             BudgetPool debitor = BudgetPool.map(location))
+        {
+            for (long budgetId = 1L; budgetId <= 1024L; budgetId++)
+            {
+                assertTrue(creditor.attach(budgetId));
+                creditor.credit(budgetId, budgetId);
+
+                assertEquals(budgetId, debitor.available(budgetId));
+                assertEquals(budgetId, debitor.detach(budgetId));
+
+                assertEquals(BudgetPool.NO_CREDIT, creditor.available(budgetId));
+                assertEquals(BudgetPool.NO_CREDIT, creditor.detach(budgetId));
+                assertEquals(0L, creditor.attached());
+            }
+
+            assertTrue(debitor.attach(1L));
+            assertEquals(0L, creditor.available(1L));
+        }
+    }
+
+    @Test
+    public void shouldProbePastDetachedBudgetEntry() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 2))
+        {
+            assertTrue(budgets.attach(1L));
+            assertTrue(budgets.attach(3L));
+            budgets.credit(3L, 8L);
+
+            budgets.detach(1L);
+
+            assertEquals(8L, budgets.available(3L));
+            assertFalse(budgets.attach(3L));
+            assertTrue(budgets.attach(5L));
+            assertEquals(2L, budgets.attached());
+            assertEquals(0L, budgets.available(5L));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectClaimFromUnattachedBudget() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 2))
+        {
+            budgets.attach(1L);
+            budgets.claim(3L, 0, 0, 8);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectDebitFromUnattachedBudget() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 2))
+        {
+            budgets.attach(1L);
+            budgets.debit(3L, 8L);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectCreditToUnattachedBudget() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 2))
+        {
+            budgets.credit(1L, 8L);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectAttachWhenExhausted() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 1))
+        {
+            budgets.attach(1L);
+            budgets.attach(2L);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectBudgetCountNotPowerOfTwo() throws Exception
+    {
+        BudgetPool.create(new File(folder.getRoot(), "budgets"), 3);
+    }
+}
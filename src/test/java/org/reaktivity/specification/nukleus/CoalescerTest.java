@@ -0,0 +1,182 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+public class CoalescerTest
+{
+    private final List<String> frames = new ArrayList<>();
+
+    private void onFrame(
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        frames.add(buffer.getStringWithoutLengthAscii(offset, length));
+    }
+
+    @Test
+    public void shouldCoalesceSmallWritesUpToMinimum()
+    {
+        final Coalescer coalescer = new Coalescer(8, 16, 1000L, this::onFrame);
+
+        coalescer.append(ascii("abc"), 0, 3, 0L);
+        coalescer.append(ascii("def"), 0, 3, 1L);
+        assertEquals(0, frames.size());
+        assertEquals(6, coalescer.buffered());
+
+        coalescer.append(ascii("ghi"), 0, 3, 2L);
+
+        assertEquals(1, frames.size());
+        assertEquals("abcdefghi", frames.get(0));
+        assertEquals(0, coalescer.buffered());
+        assertEquals(Coalescer.NO_DEADLINE, coalescer.deadline());
+    }
+
+    @Test
+    public void shouldEmitBeforeExceedingMaximum()
+    {
+        final Coalescer coalescer = new Coalescer(8, 8, 1000L, this::onFrame);
+
+        coalescer.append(ascii("abcde"), 0, 5, 0L);
+        coalescer.append(ascii("fghij"), 0, 5, 0L);
+
+        assertEquals(1, frames.size());
+        assertEquals("abcde", frames.get(0));
+        assertEquals(5, coalescer.buffered());
+    }
+
+    @Test
+    public void shouldSplitLargeWritesAtMaximumWithoutStaging()
+    {
+        final Coalescer coalescer = new Coalescer(4, 8, 1000L, this::onFrame);
+
+        coalescer.append(ascii("0123456789abcdefghij"), 0, 20, 0L);
+
+        assertEquals(3, frames.size());
+        assertEquals("01234567", frames.get(0));
+        assertEquals("89abcdef", frames.get(1));
+        assertEquals("ghij", frames.get(2));
+        assertEquals(0, coalescer.buffered());
+    }
+
+    @Test
+    public void shouldEmitOnFlush()
+    {
+        final Coalescer coalescer = new Coalescer(64, 128, 1000L, this::onFrame);
+
+        coalescer.append(ascii("abc"), 0, 3, 0L);
+        coalescer.flush();
+        coalescer.flush();
+
+        assertEquals(1, frames.size());
+        assertEquals("abc", frames.get(0));
+    }
+
+    @Test
+    public void shouldEmitOnDeadline()
+    {
+        final Coalescer coalescer = new Coalescer(64, 128, 1000L, this::onFrame);
+
+        coalescer.append(ascii("abc"), 0, 3, 500L);
+        coalescer.append(ascii("def"), 0, 3, 900L);
+
+        assertEquals(1500L, coalescer.deadline());
+        assertEquals(0, coalescer.poll(1499L));
+        assertEquals(1, coalescer.poll(1500L));
+        assertEquals(0, coalescer.poll(1501L));
+
+        assertEquals(1, frames.size());
+        assertEquals("abcdef", frames.get(0));
+    }
+
+    @Test
+    public void shouldReduceFramesPerByte()
+    {
+        final Coalescer coalescer = new Coalescer(1000, 1024, 1000L, this::onFrame);
+        final DirectBuffer write = ascii("0123456789");
+
+        for (int i = 0; i < 1000; i++)
+        {
+            coalescer.append(write, 0, write.capacity(), i);
+        }
+        coalescer.flush();
+
+        assertEquals(1000L, coalescer.writes());
+        assertEquals(10L, coalescer.frames());
+        assertEquals(10_000L, coalescer.bytes());
+        assertEquals(1000L, coalescer.bytes() / coalescer.frames());
+    }
+
+    @Test
+    public void shouldCountFramesAndBytesAcrossDeadlineFlushes()
+    {
+        final Coalescer coalescer = new Coalescer(256, 512, 1000L, this::onFrame);
+        final DirectBuffer write = ascii("0123456789");
+
+        long nowNanos = 0L;
+        for (int i = 0; i < 100; i++, nowNanos += 300L)
+        {
+            coalescer.poll(nowNanos);
+            coalescer.append(write, 0, write.capacity(), nowNanos);
+        }
+        assertEquals(1, coalescer.poll(nowNanos));
+
+        assertEquals(100L, coalescer.writes());
+        assertEquals(25L, coalescer.frames());
+        assertEquals(1000L, coalescer.bytes());
+        assertTrue(frames.stream().allMatch(f -> f.length() == 40));
+
+        for (int i = 0; i < 30; i++)
+        {
+            coalescer.append(write, 0, write.capacity(), nowNanos);
+        }
+
+        assertEquals(26L, coalescer.frames());
+        assertEquals(1260L, coalescer.bytes());
+        assertEquals(40, coalescer.buffered());
+        assertEquals(nowNanos + 1000L, coalescer.deadline());
+
+        assertEquals(0, coalescer.poll(nowNanos + 999L));
+        assertEquals(1, coalescer.poll(nowNanos + 1000L));
+
+        assertEquals(130L, coalescer.writes());
+        assertEquals(27L, coalescer.frames());
+        assertEquals(1300L, coalescer.bytes());
+        assertEquals(0, coalescer.buffered());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectMinimumAboveMaximum()
+    {
+        new Coalescer(16, 8, 0L, this::onFrame);
+    }
+
+    private static DirectBuffer ascii(
+        String text)
+    {
+        return new UnsafeBuffer(text.getBytes());
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.broadcast.BroadcastTransmitter;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reaktivity.specification.nukleus.Functions.Helper.ControlHelper;
+
+public class ControlClientTest
+{
+    private static final int ROUTE_TYPE_ID = 0x00000001;
+    private static final int ROUTED_TYPE_ID = 0x40000001;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldPipelineCommandsAndMatchResponses() throws Exception
+    {
+        try (ControlHelper control = Functions.directory(folder.getRoot().getPath())
+                                              .controlCapacity(64 * 1024, 64 * 1024)
+                                              .controlNew())
+        {
+            ControlClient client = control.client();
+            MutableDirectBuffer command = new UnsafeBuffer(new byte[16]);
+            Long2LongHashMap routed = new Long2LongHashMap(-1L);
+            long correlationId = 0L;
+
+            for (int i = 0; i < 100; i++)
+            {
+                correlationId = client.nextCorrelationId();
+                command.putLong(0, correlationId);
+                command.putLong(8, i);
+                assertTrue(client.submit(ROUTE_TYPE_ID, command, 0, command.capacity(),
+                    (t, b, o, l) -> routed.put(b.getLong(o), b.getLong(o + 8))));
+            }
+
+            assertEquals(100, client.pending());
+
+            RingBuffer commands = control.commands();
+            BroadcastTransmitter responses = new BroadcastTransmitter(control.getController());
+            int read = commands.read((t, b, o, l) -> responses.transmit(ROUTED_TYPE_ID, b, o, l));
+
+            assertEquals(100, read);
+            assertEquals(100, client.poll());
+            assertEquals(0, client.pending());
+            assertEquals(100, routed.size());
+            assertEquals(99L, routed.get(correlationId));
+        }
+    }
+}
@@ -16,17 +16,35 @@
 package org.reaktivity.specification.nukleus;
 
 import static java.nio.ByteOrder.BIG_ENDIAN;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.junit.Test;
+import org.kaazing.k3po.lang.el.BytesMatcher;
+import org.reaktivity.specification.nukleus.internal.types.OctetsFW;
 import org.reaktivity.specification.nukleus.internal.types.String16FW;
 import org.reaktivity.specification.nukleus.internal.types.String8FW;
 import org.reaktivity.specification.nukleus.internal.types.Varuint32nFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BatchFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.PriorityBeginExFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.ReferenceFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.SegmentFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.SignalFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.WindowFW;
 
 public class CoreFunctionsTest
 {
@@ -149,6 +167,59 @@ public class CoreFunctionsTest
         assertEquals(array.length, length.limit() + length.value());
     }
 
+    @Test
+    public void shouldEncodeMultiByteString()
+    {
+        String text = "caf\u00e9 \u20ac \ud83d\ude00";
+        byte[] array = CoreFunctions.string(text);
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        String8FW string = new String8FW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(text.getBytes(UTF_8).length + 1, array.length);
+        assertEquals(text, string.asString());
+    }
+
+    @Test
+    public void shouldEncodeMultiByteString16()
+    {
+        String text = "\u4e16\u754c\ud83c\udf0d";
+        byte[] array = CoreFunctions.string16(text);
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        String16FW string = new String16FW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(text.getBytes(UTF_8).length + 2, array.length);
+        assertEquals(text, string.asString());
+    }
+
+    @Test
+    public void shouldReplaceUnpairedSurrogateInVarString()
+    {
+        String text = "a\ud800b";
+        byte[] array = CoreFunctions.varstring(text);
+
+        assertArrayEquals(CoreFunctions.varbytes(text.getBytes(UTF_8)), array);
+    }
+
+    @Test
+    public void shouldPutString16nAtOffset()
+    {
+        MutableDirectBuffer buffer = new UnsafeBuffer(new byte[32]);
+
+        int length = CoreFunctions.putString16(buffer, 4, "value", BIG_ENDIAN);
+
+        assertEquals(CoreFunctions.sizeofString16("value"), length);
+        String16FW string = new String16FW(BIG_ENDIAN).wrap(buffer, 4, 4 + length);
+        assertEquals("value", string.asString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectStringTooLong()
+    {
+        CoreFunctions.string(new String(new char[0xff]).replace('\0', 'x'));
+    }
+
     @Test
     public void shouldMaskChallengeCapability()
     {
@@ -156,6 +227,46 @@ public class CoreFunctionsTest
         assertEquals(0x01, challengeMask);
     }
 
+    @Test
+    public void shouldMaskPerformanceCapabilities()
+    {
+        final byte mask = CoreFunctions.capabilities("BATCH", "REFERENCE", "COALESCE");
+        assertEquals(0x0e, mask);
+    }
+
+    @Test
+    public void shouldNegotiateCapabilities()
+    {
+        final byte offered = CoreFunctions.capabilities("BATCH", "REFERENCE");
+        final byte supported = CoreFunctions.capabilities("CHALLENGE", "BATCH");
+        assertEquals(CoreFunctions.capabilities("BATCH"), CoreFunctions.negotiateCapabilities(offered, supported));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownCapability()
+    {
+        CoreFunctions.capabilities("CHALLENGE", "UNKNOWN");
+    }
+
+    @Test
+    public void shouldEncodePriorityBeginExtension()
+    {
+        final byte[] array = CoreFunctions.priorityBeginEx(0x01, 200);
+
+        final DirectBuffer buffer = new UnsafeBuffer(array);
+        final PriorityBeginExFW priorityBeginEx = new PriorityBeginExFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(0x01, priorityBeginEx.typeId());
+        assertEquals(200, priorityBeginEx.weight());
+        assertEquals(array.length, priorityBeginEx.sizeof());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectZeroPriorityWeight()
+    {
+        CoreFunctions.priorityBeginEx(0x01, 0);
+    }
+
     @Test
     public void shouldComputeVarintTenBytesMax() throws Exception
     {
@@ -311,4 +422,443 @@ public class CoreFunctionsTest
         byte[] actuals = CoreFunctions.varint(0);
         assertArrayEquals(new byte[] { 0x00 }, actuals);
     }
+
+    @Test
+    public void shouldPutVarintAtOffset() throws Exception
+    {
+        MutableDirectBuffer buffer = new UnsafeBuffer(new byte[16]);
+
+        int length = CoreFunctions.putVarint(buffer, 3, -1L << 13);
+
+        assertEquals(2, length);
+        assertEquals(CoreFunctions.sizeofVarint(-1L << 13), length);
+        assertEquals((byte) 0xff, buffer.getByte(3));
+        assertEquals(0x7f, buffer.getByte(4));
+    }
+
+    @Test
+    public void shouldPutVaruintTenBytesMax() throws Exception
+    {
+        MutableDirectBuffer buffer = new UnsafeBuffer(new byte[10]);
+
+        int length = CoreFunctions.putVaruint(buffer, 0, -1L);
+
+        assertEquals(10, length);
+        assertEquals(10, CoreFunctions.sizeofVaruint(-1L));
+        assertArrayEquals(CoreFunctions.varuint(-1L), buffer.byteArray());
+    }
+
+    @Test
+    public void shouldSizeVarintAsEncoded() throws Exception
+    {
+        for (int shift = 0; shift < Long.SIZE; shift++)
+        {
+            long value = 1L << shift;
+            assertEquals(CoreFunctions.varint(value).length, CoreFunctions.sizeofVarint(value));
+            assertEquals(CoreFunctions.varint(-value).length, CoreFunctions.sizeofVarint(-value));
+            assertEquals(CoreFunctions.varuint(value).length, CoreFunctions.sizeofVaruint(value));
+        }
+    }
+
+    @Test
+    public void shouldPutVarbytesAtOffset() throws Exception
+    {
+        MutableDirectBuffer buffer = new UnsafeBuffer(new byte[16]);
+
+        int length = CoreFunctions.putVarbytes(buffer, 2, new byte[] { 0x01, 0x02, 0x03 });
+
+        assertEquals(4, length);
+        assertEquals(0x04, buffer.getByte(2));
+        assertEquals(0x01, buffer.getByte(3));
+        assertEquals(0x03, buffer.getByte(5));
+    }
+
+    @Test
+    public void shouldPutNullVarbytes() throws Exception
+    {
+        MutableDirectBuffer buffer = new UnsafeBuffer(new byte[16]);
+
+        int length = CoreFunctions.putVarbytes(buffer, 0, null);
+
+        assertEquals(1, length);
+        assertEquals(0x00, buffer.getByte(0));
+        assertArrayEquals(new byte[] { 0x00 }, CoreFunctions.varbytes(null));
+    }
+
+    @Test
+    public void shouldBuildBeginFrame() throws Exception
+    {
+        byte[] array = CoreFunctions.begin()
+                                    .routeId(0x0000_0001_0000_0002L)
+                                    .streamId(3L)
+                                    .traceId(4L)
+                                    .affinity(5L)
+                                    .extension(new byte[] { 0x01, 0x02 })
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        BeginFW begin = new BeginFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(0x0000_0001_0000_0002L, begin.routeId());
+        assertEquals(3L, begin.streamId());
+        assertEquals(4L, begin.traceId());
+        assertEquals(5L, begin.affinity());
+        assertEquals(2, begin.extension().sizeof());
+    }
+
+    @Test
+    public void shouldBuildDataFrame() throws Exception
+    {
+        byte[] array = CoreFunctions.data()
+                                    .streamId(3L)
+                                    .budgetId(7L)
+                                    .payload("hello".getBytes(UTF_8))
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        DataFW data = new DataFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(3L, data.streamId());
+        assertEquals(0x03, data.flags());
+        assertEquals(7L, data.budgetId());
+        assertEquals(5, data.reserved());
+        assertEquals(5, data.length());
+        assertEquals("hello", data.payload().buffer().getStringWithoutLengthUtf8(data.payload().offset(), 5));
+        assertEquals(0, data.extension().sizeof());
+    }
+
+    @Test
+    public void shouldBuildDataFrameWithExplicitReserved() throws Exception
+    {
+        byte[] array = CoreFunctions.data()
+                                    .reserved(-1)
+                                    .payload("hello".getBytes(UTF_8))
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        DataFW data = new DataFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(-1, data.reserved());
+
+        array = CoreFunctions.data()
+                             .payload("hello".getBytes(UTF_8))
+                             .build();
+
+        buffer = new UnsafeBuffer(array);
+        data = new DataFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(5, data.reserved());
+    }
+
+    @Test
+    public void shouldBuildDataFrameWithLargePayload() throws Exception
+    {
+        byte[] payload = new byte[256 * 1024];
+        byte[] array = CoreFunctions.data()
+                                    .payload(payload)
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        DataFW data = new DataFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(payload.length, data.length());
+    }
+
+    @Test
+    public void shouldBuildBatchFrame() throws Exception
+    {
+        byte[] array = CoreFunctions.batch()
+                                    .streamId(3L)
+                                    .segment("hello".getBytes(UTF_8))
+                                    .segment("world!".getBytes(UTF_8))
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        BatchFW batch = new BatchFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(3L, batch.streamId());
+        assertEquals(0x03, batch.flags());
+        assertEquals(11, batch.reserved());
+        assertEquals(2, batch.count());
+        assertEquals(19, batch.length());
+
+        OctetsFW segments = batch.segments();
+        SegmentFW segment = new SegmentFW().wrap(buffer, segments.offset(), segments.limit());
+        assertEquals(5, segment.length());
+        segment = new SegmentFW().wrap(buffer, segment.limit(), segments.limit());
+        assertEquals("world!", buffer.getStringWithoutLengthUtf8(segment.value().offset(), segment.length()));
+        assertEquals(segments.limit(), segment.limit());
+    }
+
+    @Test
+    public void shouldBuildBatchFrameWithExplicitReserved() throws Exception
+    {
+        byte[] array = CoreFunctions.batch()
+                                    .reserved(-1)
+                                    .segment("hello".getBytes(UTF_8))
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        BatchFW batch = new BatchFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(-1, batch.reserved());
+    }
+
+    @Test
+    public void shouldMatchBatchCount() throws Exception
+    {
+        byte[] array = CoreFunctions.batch()
+                                    .segment(new byte[4])
+                                    .segment(new byte[4])
+                                    .segment(new byte[4])
+                                    .build();
+        ByteBuffer byteBuf = ByteBuffer.wrap(array);
+
+        assertNotNull(CoreFunctions.matchBatch().count(3).match(byteBuf));
+        assertFalse(byteBuf.hasRemaining());
+    }
+
+    @Test
+    public void shouldBuildAndMatchReferenceFrame() throws Exception
+    {
+        byte[] array = CoreFunctions.reference()
+                                    .streamId(3L)
+                                    .poolId(7)
+                                    .slot(2)
+                                    .slotOffset(64)
+                                    .slotLength(1024)
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        ReferenceFW reference = new ReferenceFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(3L, reference.streamId());
+        assertEquals(1024, reference.reserved());
+        assertEquals(64, reference.slotOffset());
+
+        ByteBuffer byteBuf = ByteBuffer.wrap(array);
+        assertNotNull(CoreFunctions.matchReference().poolId(7).slot(2).slotLength(1024).match(byteBuf));
+        assertFalse(byteBuf.hasRemaining());
+    }
+
+    @Test
+    public void shouldBuildReferenceFrameWithExplicitReserved() throws Exception
+    {
+        byte[] array = CoreFunctions.reference()
+                                    .reserved(-1)
+                                    .slotLength(1024)
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        ReferenceFW reference = new ReferenceFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(-1, reference.reserved());
+    }
+
+    @Test
+    public void shouldBuildWindowFrame() throws Exception
+    {
+        byte[] array = CoreFunctions.window()
+                                    .streamId(3L)
+                                    .budgetId(7L)
+                                    .padding(10)
+                                    .minimum(64)
+                                    .capabilities(0x01)
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        WindowFW window = new WindowFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(3L, window.streamId());
+        assertEquals(7L, window.budgetId());
+        assertEquals(10, window.padding());
+        assertEquals(64, window.minimum());
+        assertEquals(0x01, window.capabilities());
+    }
+
+    @Test
+    public void shouldBuildNestedFramesOfSameType() throws Exception
+    {
+        CoreFunctions.DataBuilder outer = CoreFunctions.data().streamId(3L);
+        byte[] payload = CoreFunctions.data()
+                                      .streamId(5L)
+                                      .payload("hello".getBytes(UTF_8))
+                                      .build();
+        byte[] array = outer.payload(payload).build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        DataFW data = new DataFW().wrap(buffer, 0, buffer.capacity());
+        DataFW nested = new DataFW().wrap(new UnsafeBuffer(payload), 0, payload.length);
+
+        assertEquals(3L, data.streamId());
+        assertEquals(payload.length, data.length());
+        assertEquals(5L, nested.streamId());
+        assertSame(outer, CoreFunctions.data());
+    }
+
+    @Test
+    public void shouldBuildSignalFrame() throws Exception
+    {
+        byte[] array = CoreFunctions.signal()
+                                    .cancelId(8L)
+                                    .signalId(9)
+                                    .build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        SignalFW signal = new SignalFW().wrap(buffer, 0, buffer.capacity());
+
+        assertEquals(8L, signal.cancelId());
+        assertEquals(9, signal.signalId());
+    }
+
+    @Test
+    public void shouldReuseFrameBuilderWithDefaults() throws Exception
+    {
+        CoreFunctions.EndBuilder end = CoreFunctions.end().streamId(3L).traceId(4L);
+        end.build();
+
+        byte[] array = CoreFunctions.end().build();
+
+        DirectBuffer buffer = new UnsafeBuffer(array);
+        EndFW endRO = new EndFW().wrap(buffer, 0, buffer.capacity());
+
+        assertSame(end, CoreFunctions.end());
+        assertEquals(EndFW.TYPE_ID, end.typeId());
+        assertEquals(0L, endRO.streamId());
+        assertEquals(0L, endRO.traceId());
+    }
+
+    @Test
+    public void shouldMatchVarintInRange() throws Exception
+    {
+        ByteBuffer byteBuf = ByteBuffer.wrap(CoreFunctions.varint(-1L << 20));
+
+        BytesMatcher matcher = CoreFunctions.matchVarint(-1L << 21, 0L);
+
+        assertNotNull(matcher.match(byteBuf));
+        assertFalse(byteBuf.hasRemaining());
+    }
+
+    @Test(expected = Exception.class)
+    public void shouldNotMatchVarintOutOfRange() throws Exception
+    {
+        ByteBuffer byteBuf = ByteBuffer.wrap(CoreFunctions.varint(42L));
+
+        CoreFunctions.matchVarint(0L, 41L).match(byteBuf);
+    }
+
+    @Test
+    public void shouldAwaitIncompleteVaruint() throws Exception
+    {
+        byte[] array = CoreFunctions.varuint(1L << 20);
+        ByteBuffer byteBuf = ByteBuffer.wrap(array, 0, array.length - 1);
+
+        assertNull(CoreFunctions.matchVaruint(0L, Long.MAX_VALUE).match(byteBuf));
+        assertEquals(0, byteBuf.position());
+    }
+
+    @Test
+    public void shouldMatchString16Prefix() throws Exception
+    {
+        ByteBuffer byteBuf = ByteBuffer.wrap(CoreFunctions.string16n("hello world"));
+
+        assertNotNull(CoreFunctions.matchString16n("hello").match(byteBuf));
+        assertFalse(byteBuf.hasRemaining());
+    }
+
+    @Test
+    public void shouldMatchStringAtUnsignedLengthBoundaries() throws Exception
+    {
+        for (int length : new int[] { 127, 128, 254 })
+        {
+            ByteBuffer byteBuf = ByteBuffer.wrap(CoreFunctions.string("a" + repeat('b', length - 1)));
+
+            assertNotNull(CoreFunctions.matchString("ab").match(byteBuf));
+            assertFalse(byteBuf.hasRemaining());
+        }
+    }
+
+    @Test
+    public void shouldMatchString16AtUnsignedLengthBoundaries() throws Exception
+    {
+        for (int length : new int[] { 32767, 32768 })
+        {
+            ByteBuffer byteBuf = ByteBuffer.wrap(CoreFunctions.string16("a" + repeat('b', length - 1)));
+
+            assertNotNull(CoreFunctions.matchString16("ab").match(byteBuf));
+            assertFalse(byteBuf.hasRemaining());
+        }
+    }
+
+    @Test
+    public void shouldMatchNullStringAndString16() throws Exception
+    {
+        ByteBuffer byteBuf = ByteBuffer.wrap(CoreFunctions.string(null));
+        assertNotNull(CoreFunctions.matchString(null).match(byteBuf));
+        assertFalse(byteBuf.hasRemaining());
+
+        byteBuf = ByteBuffer.wrap(CoreFunctions.string16(null));
+        assertNotNull(CoreFunctions.matchString16(null).match(byteBuf));
+        assertFalse(byteBuf.hasRemaining());
+    }
+
+    @Test(expected = Exception.class)
+    public void shouldNotMatchStringPrefix() throws Exception
+    {
+        ByteBuffer byteBuf = ByteBuffer.wrap(CoreFunctions.string("hello world"));
+
+        CoreFunctions.matchString("world").match(byteBuf);
+    }
+
+    @Test
+    public void shouldMatchDataFlagsAndTraceIdMask() throws Exception
+    {
+        byte[] array = CoreFunctions.data()
+                                    .streamId(3L)
+                                    .traceId(0x0102_0000_0000_0004L)
+                                    .flags(0x03)
+                                    .payload(new byte[16])
+                                    .build();
+        ByteBuffer byteBuf = ByteBuffer.wrap(array);
+
+        BytesMatcher matcher = CoreFunctions.matchData()
+                                            .streamId(3L)
+                                            .traceId(0x0102_0000_0000_0000L, 0xffff_0000_0000_0000L)
+                                            .flags(0x01);
+
+        assertNotNull(matcher.match(byteBuf));
+        assertFalse(byteBuf.hasRemaining());
+    }
+
+    @Test(expected = Exception.class)
+    public void shouldNotMatchDataFlags() throws Exception
+    {
+        byte[] array = CoreFunctions.data()
+                                    .flags(0x02)
+                                    .build();
+
+        CoreFunctions.matchData().flags(0x01).match(ByteBuffer.wrap(array));
+    }
+
+    @Test
+    public void shouldMatchWindowBudget() throws Exception
+    {
+        byte[] array = CoreFunctions.window()
+                                    .budgetId(7L)
+                                    .padding(5)
+                                    .build();
+        ByteBuffer byteBuf = ByteBuffer.wrap(array);
+
+        assertNotNull(CoreFunctions.matchWindow().budgetId(7L).match(byteBuf));
+        assertFalse(byteBuf.hasRemaining());
+    }
+
+    private static String repeat(
+        char ch,
+        int count)
+    {
+        final char[] chars = new char[count];
+        Arrays.fill(chars, ch);
+        return new String(chars);
+    }
 }
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.reaktivity.specification.nukleus.FragmentReassembler.FLAG_FIN;
+import static org.reaktivity.specification.nukleus.FragmentReassembler.FLAG_INCOMPLETE;
+import static org.reaktivity.specification.nukleus.FragmentReassembler.FLAG_INIT;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FragmentReassemblerTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> messages = new ArrayList<>();
+
+    private void onMessage(
+        long streamId,
+        DirectBuffer buffer,
+        int offset,
+        int length)
+    {
+        messages.add(streamId + ":" + buffer.getStringWithoutLengthAscii(offset, length));
+    }
+
+    @Test
+    public void shouldReassembleInterleavedStreams() throws Exception
+    {
+        try (SlabPool slabs = SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 4, 64))
+        {
+            final FragmentReassembler reassembler = new FragmentReassembler(slabs, this::onMessage);
+
+            assertTrue(reassembler.onData(1L, FLAG_INIT, ascii("abc"), 0, 3));
+            assertTrue(reassembler.onData(3L, FLAG_INIT, ascii("123"), 0, 3));
+            assertTrue(reassembler.onData(1L, 0x00, ascii("def"), 0, 3));
+            assertTrue(reassembler.onData(3L, FLAG_FIN, ascii("456"), 0, 3));
+            assertTrue(reassembler.onData(1L, FLAG_FIN, ascii("ghi"), 0, 3));
+
+            assertEquals(2, messages.size());
+            assertEquals("3:123456", messages.get(0));
+            assertEquals("1:abcdefghi", messages.get(1));
+            assertEquals(0, reassembler.pending());
+            assertEquals(0L, slabs.acquired());
+        }
+    }
+
+    @Test
+    public void shouldDeliverUnfragmentedMessageWithoutSlab() throws Exception
+    {
+        try (SlabPool slabs = SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 1, 64))
+        {
+            final FragmentReassembler reassembler = new FragmentReassembler(slabs, this::onMessage);
+
+            slabs.acquire(7L);
+
+            assertTrue(reassembler.onData(1L, FLAG_INIT | FLAG_FIN, ascii("whole"), 0, 5));
+            assertEquals("1:whole", messages.get(0));
+        }
+    }
+
+    @Test
+    public void shouldRejectWhenSlabsExhausted() throws Exception
+    {
+        try (SlabPool slabs = SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 1, 64))
+        {
+            final FragmentReassembler reassembler = new FragmentReassembler(slabs, this::onMessage);
+
+            assertTrue(reassembler.onData(1L, FLAG_INIT, ascii("abc"), 0, 3));
+            assertFalse(reassembler.onData(3L, FLAG_INIT, ascii("123"), 0, 3));
+            assertEquals(1L, reassembler.rejected());
+
+            reassembler.abort(1L);
+            assertTrue(reassembler.onData(3L, FLAG_INIT, ascii("123"), 0, 3));
+        }
+    }
+
+    @Test
+    public void shouldRejectMessageExceedingSlotCapacity() throws Exception
+    {
+        try (SlabPool slabs = SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 1, 8))
+        {
+            final FragmentReassembler reassembler = new FragmentReassembler(slabs, this::onMessage);
+
+            assertTrue(reassembler.onData(1L, FLAG_INIT, ascii("abcde"), 0, 5));
+            assertFalse(reassembler.onData(1L, FLAG_FIN, ascii("fghij"), 0, 5));
+
+            assertEquals(0, messages.size());
+            assertEquals(0, reassembler.pending());
+            assertEquals(0L, slabs.acquired());
+        }
+    }
+
+    @Test
+    public void shouldRejectContinuationWithoutInit() throws Exception
+    {
+        try (SlabPool slabs = SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 1, 64))
+        {
+            final FragmentReassembler reassembler = new FragmentReassembler(slabs, this::onMessage);
+
+            assertFalse(reassembler.onData(1L, FLAG_FIN, ascii("abc"), 0, 3));
+            assertEquals(1L, reassembler.rejected());
+        }
+    }
+
+    @Test
+    public void shouldDiscardIncompleteMessage() throws Exception
+    {
+        try (SlabPool slabs = SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 1, 64))
+        {
+            final FragmentReassembler reassembler = new FragmentReassembler(slabs, this::onMessage);
+
+            assertTrue(reassembler.onData(1L, FLAG_INIT, ascii("abc"), 0, 3));
+            assertTrue(reassembler.onData(1L, FLAG_FIN | FLAG_INCOMPLETE, ascii("def"), 0, 3));
+
+            assertEquals(0, messages.size());
+            assertEquals(0L, slabs.acquired());
+        }
+    }
+
+    @Test
+    public void shouldReassembleManyFragmentedMessages() throws Exception
+    {
+        try (SlabPool slabs = SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 8, 256))
+        {
+            final int[] lengths = new int[1];
+            final FragmentReassembler reassembler =
+                new FragmentReassembler(slabs, (s, b, o, l) -> lengths[0] += l);
+            final DirectBuffer fragment = ascii("0123456789abcdef");
+
+            for (int i = 0; i < 10_000; i++)
+            {
+                for (long streamId = 1L; streamId <= 15L; streamId += 2)
+                {
+                    for (int f = 0; f < 16; f++)
+                    {
+                        final int flags = (f == 0 ? FLAG_INIT : 0) | (f == 15 ? FLAG_FIN : 0);
+                        reassembler.onData(streamId, flags, fragment, 0, fragment.capacity());
+                    }
+                }
+            }
+
+            assertEquals(80_000L, reassembler.messages());
+            assertEquals(80_000 * 256, lengths[0]);
+            assertEquals(0L, reassembler.rejected());
+            assertEquals(0L, slabs.acquired());
+        }
+    }
+
+    private static DirectBuffer ascii(
+        String text)
+    {
+        return new UnsafeBuffer(text.getBytes());
+    }
+}
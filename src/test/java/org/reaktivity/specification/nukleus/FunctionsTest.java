@@ -0,0 +1,148 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.agrona.UnsafeAccess;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.agrona.concurrent.status.AtomicCounter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reaktivity.specification.nukleus.Functions.Helper.ControlHelper;
+
+public class FunctionsTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldLayoutControlPacked() throws Exception
+    {
+        try (ControlHelper control = Functions.directory(folder.getRoot().getPath())
+                                              .controlCapacity(1024, 1024)
+                                              .controlNew())
+        {
+            assertEquals(64, control.commandBufferOffset());
+            assertEquals(64 + 1024 + RingBufferDescriptor.TRAILER_LENGTH, control.responseBufferOffset());
+            assertEquals(1024 + RingBufferDescriptor.TRAILER_LENGTH, control.getNukleus().capacity());
+        }
+    }
+
+    @Test
+    public void shouldLayoutControlPageAlignedAndPrefaulted() throws Exception
+    {
+        final int pageSize = UnsafeAccess.UNSAFE.pageSize();
+
+        try (ControlHelper control = Functions.directory(folder.getRoot().getPath())
+                                              .controlCapacity(8192, 4096)
+                                              .controlPageAligned(true)
+                                              .controlPrefault(true)
+                                              .controlNew())
+        {
+            assertEquals(0, control.commandBufferOffset() % pageSize);
+            assertEquals(0, control.responseBufferOffset() % pageSize);
+        }
+
+        try (ControlHelper control = Functions.directory(folder.getRoot().getPath())
+                                              .control())
+        {
+            assertEquals(pageSize, control.commandBufferOffset());
+            assertEquals(0, control.responseBufferOffset() % pageSize);
+            assertEquals(8192 + RingBufferDescriptor.TRAILER_LENGTH, control.getNukleus().capacity());
+        }
+    }
+
+    @Test
+    public void shouldLayoutCountersAfterResponses() throws Exception
+    {
+        try (ControlHelper control = Functions.directory(folder.getRoot().getPath())
+                                              .controlCapacity(1024, 1024, 4096, 1024)
+                                              .controlNew())
+        {
+            assertEquals(4096, control.getCounterLabels().capacity());
+            assertEquals(1024, control.getCounterValues().capacity());
+            assertTrue(control.getCounterLabels().addressOffset() % 64 == 0);
+            assertTrue(control.getCounterValues().addressOffset() % 64 == 0);
+        }
+
+        try (ControlHelper control = Functions.directory(folder.getRoot().getPath())
+                                              .control())
+        {
+            assertEquals(4096, control.getCounterLabels().capacity());
+            assertEquals(1024, control.getCounterValues().capacity());
+        }
+    }
+
+    @Test
+    public void shouldSampleCounters() throws Exception
+    {
+        try (ControlHelper control = Functions.directory(folder.getRoot().getPath())
+                                              .controlCapacity(1024, 1024, 4096, 1024)
+                                              .controlNew();
+             ControlHelper reader = Functions.directory(folder.getRoot().getPath())
+                                             .control())
+        {
+            AtomicCounter frames = control.counters().newCounter("streams.frames");
+            AtomicCounter bytes = control.counters().newCounter("streams.bytes");
+
+            frames.increment();
+            bytes.getAndAdd(1024L);
+
+            assertEquals(1L, Functions.counter(reader, "streams.frames").longValue());
+            assertEquals(1024L, Functions.counter(reader, "streams.bytes").longValue());
+            assertEquals(0L, Functions.counter(reader, "streams.unknown").longValue());
+
+            bytes.getAndAdd(1024L);
+            assertEquals(2048L, reader.counter("streams.bytes"));
+
+            bytes.close();
+            control.counters().newCounter("streams.backpressure").set(3L);
+            assertEquals(3L, reader.counter("streams.backpressure"));
+            assertEquals(0L, reader.counter("streams.bytes"));
+        }
+    }
+
+    @Test
+    public void shouldCreditNewBudgetOnce() throws Exception
+    {
+        final String filename = folder.getRoot().getPath() + "/budgets";
+
+        try (BudgetPool creditor = Functions.newBudgetPool(filename, 4);
+             BudgetPool debitor = Functions.budgetPool(filename))
+        {
+            assertEquals(1L, Functions.newBudget(creditor, 1L, 100L).longValue());
+            assertEquals(100L, debitor.available(1L));
+
+            try
+            {
+                Functions.newBudget(debitor, 1L, 100L);
+                fail("expected IllegalStateException");
+            }
+            catch (IllegalStateException ex)
+            {
+                assertEquals(100L, creditor.available(1L));
+            }
+
+            assertEquals(100L, Functions.detachBudget(debitor, 1L).longValue());
+            assertEquals(1L, Functions.newBudget(debitor, 1L, 50L).longValue());
+            assertEquals(50L, creditor.available(1L));
+        }
+    }
+}
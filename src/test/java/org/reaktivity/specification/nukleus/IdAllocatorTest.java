@@ -0,0 +1,119 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.agrona.collections.LongHashSet;
+import org.junit.Test;
+
+public class IdAllocatorTest
+{
+    @Test
+    public void shouldAllocateOddPositiveInitialIds()
+    {
+        IdAllocator allocator = new IdAllocator(false, 42L);
+
+        for (int i = 0; i < 100_000; i++)
+        {
+            long initialId = allocator.nextInitialId();
+            assertTrue(initialId > 0L);
+            assertEquals(1L, initialId & 1L);
+        }
+    }
+
+    @Test
+    public void shouldAllocateEvenPositiveReplyIds()
+    {
+        IdAllocator allocator = new IdAllocator(false, 42L);
+
+        for (int i = 0; i < 100_000; i++)
+        {
+            long replyId = allocator.nextReplyId();
+            assertTrue(replyId > 0L);
+            assertEquals(0L, replyId & 1L);
+        }
+    }
+
+    @Test
+    public void shouldNotDrawRandomSeedWhenConfigured()
+    {
+        RandomSource random = new RandomSource(7L);
+
+        assertEquals(42L, IdAllocator.defaultSeed(42L, random));
+        assertEquals(new RandomSource(7L).nextLong(), random.nextLong());
+    }
+
+    @Test
+    public void shouldDrawRandomSeedWhenNotConfigured()
+    {
+        assertEquals(new RandomSource(7L).nextLong(), IdAllocator.defaultSeed(null, new RandomSource(7L)));
+    }
+
+    @Test
+    public void shouldPairReplyIdWithInitialId()
+    {
+        long initialId = new IdAllocator(false, 42L).nextInitialId();
+        long replyId = IdAllocator.replyId(initialId);
+
+        assertEquals(initialId - 1, replyId);
+        assertEquals(initialId, IdAllocator.replyId(replyId));
+    }
+
+    @Test
+    public void shouldAllocateSequentialIds()
+    {
+        IdAllocator allocator = new IdAllocator(true, 0L);
+
+        assertEquals(3L, allocator.nextInitialId());
+        assertEquals(5L, allocator.nextInitialId());
+        assertEquals(3L, allocator.nextId());
+    }
+
+    @Test
+    public void shouldAllocateUniqueIdsAcrossThreads() throws Exception
+    {
+        final IdAllocator allocator = new IdAllocator(false, 42L);
+        final int threadCount = 4;
+        final int idCount = 200_000;
+        final long[][] ids = new long[threadCount][idCount];
+
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++)
+        {
+            final long[] allocated = ids[t];
+            threads[t] = new Thread(() ->
+            {
+                for (int i = 0; i < allocated.length; i++)
+                {
+                    allocated[i] = allocator.nextInitialId();
+                }
+            });
+            threads[t].start();
+        }
+
+        LongHashSet unique = new LongHashSet(threadCount * idCount * 2);
+        for (int t = 0; t < threadCount; t++)
+        {
+            threads[t].join();
+            for (long id : ids[t])
+            {
+                assertTrue(unique.add(id));
+            }
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+import org.reaktivity.specification.nukleus.NukleusRule.Allocation;
+import org.reaktivity.specification.nukleus.streams.StreamsLayout;
+
+public class NukleusRuleTest
+{
+    private static final long LENGTH = 1024 * 1024 + 64 * 1024 + 2 * RingBufferDescriptor.TRAILER_LENGTH;
+
+    @Test
+    public void shouldCreateSparseFilesInParallelAndCleanup() throws Throwable
+    {
+        final NukleusRule nukleus = new NukleusRule()
+                .directory("target/nukleus-rule")
+                .allocation(Allocation.SPARSE)
+                .parallel(true)
+                .cleanup(true)
+                .streams("example", "source#1")
+                .streams("example", "source#2")
+                .streams("example", "source#3");
+
+        final File directory = new File(nukleus.directory(), "example/streams");
+
+        evaluate(nukleus, () ->
+        {
+            assertEquals(LENGTH, new File(directory, "source#1").length());
+            assertEquals(LENGTH, new File(directory, "source#3").length());
+
+            nukleus.streams("example", "target#1");
+            assertEquals(LENGTH, new File(directory, "target#1").length());
+        });
+
+        assertFalse(new File(directory, "source#1").exists());
+        assertFalse(new File(directory, "target#1").exists());
+    }
+
+    @Test
+    public void shouldCreateManySiblingFilesInParallel() throws Throwable
+    {
+        for (int run = 0; run < 20; run++)
+        {
+            final NukleusRule nukleus = new NukleusRule()
+                    .directory("target/nukleus-rule-siblings")
+                    .allocation(Allocation.SPARSE)
+                    .parallel(true)
+                    .cleanup(true);
+
+            for (int i = 0; i < 32; i++)
+            {
+                nukleus.streams("example", "source#" + i);
+            }
+
+            final File directory = new File(nukleus.directory(), "example/streams");
+
+            evaluate(nukleus, () ->
+            {
+                for (int i = 0; i < 32; i++)
+                {
+                    assertEquals(LENGTH, new File(directory, "source#" + i).length());
+                }
+            });
+
+            assertFalse(directory.exists());
+        }
+    }
+
+    @Test
+    public void shouldCreatePreallocatedFilesOnShm() throws Throwable
+    {
+        final NukleusRule nukleus = new NukleusRule()
+                .directory("nukleus-rule-" + ProcessHandle.current().pid())
+                .shm(true)
+                .allocation(Allocation.PREALLOCATED)
+                .cleanup(true)
+                .streams("example", "source");
+
+        final File streams = new File(nukleus.directory(), "example/streams/source");
+        assertEquals(new File("/dev/shm").isDirectory(), streams.getPath().startsWith("/dev/shm"));
+
+        evaluate(nukleus, () -> assertEquals(LENGTH, streams.length()));
+
+        assertFalse(streams.exists());
+    }
+
+    @Test
+    public void shouldPublishResolvedDirectoryWhileEvaluating() throws Throwable
+    {
+        final NukleusRule nukleus = new NukleusRule()
+                .directory("nukleus-rule-" + ProcessHandle.current().pid())
+                .shm(true);
+
+        evaluate(nukleus, () ->
+            assertEquals(nukleus.directory().getPath(), System.getProperty(NukleusRule.DIRECTORY_PROPERTY_NAME)));
+
+        assertNull(System.getProperty(NukleusRule.DIRECTORY_PROPERTY_NAME));
+    }
+
+    @Test
+    public void shouldRethrowOccupancySamplerError() throws Throwable
+    {
+        final IllegalStateException failure = new IllegalStateException("unreadable");
+        final AtomicBuffer broken = new UnsafeBuffer(new byte[1024 + RingBufferDescriptor.TRAILER_LENGTH])
+        {
+            @Override
+            public long getLongVolatile(
+                int index)
+            {
+                throw failure;
+            }
+        };
+        final NukleusRule nukleus = new NukleusRule()
+                .directory("target/nukleus-rule")
+                .occupancy(0.5)
+                .occupancySamplePeriod(1_000L);
+
+        try
+        {
+            evaluate(nukleus, () -> nukleus.occupancy().sample("broken", broken));
+            fail("expected sampler error");
+        }
+        catch (AssertionError ex)
+        {
+            assertSame(failure, ex.getCause());
+        }
+    }
+
+    @Test
+    public void shouldKeepZeroedFilesByDefault() throws Throwable
+    {
+        final NukleusRule nukleus = new NukleusRule()
+                .directory("target/nukleus-rule")
+                .streams("example", "retained");
+
+        final File streams = new File(nukleus.directory(), "example/streams/retained");
+
+        evaluate(nukleus, () -> assertEquals(LENGTH, streams.length()));
+
+        assertTrue(streams.delete());
+    }
+
+    @Test
+    public void shouldRecordOccupancyHighWater() throws Throwable
+    {
+        final NukleusRule nukleus = new NukleusRule()
+                .directory("target/nukleus-rule")
+                .streamsBufferCapacity(4096)
+                .throttleBufferCapacity(1024)
+                .cleanup(true)
+                .occupancy(1.0)
+                .streams("example", "source");
+
+        final File streams = new File(nukleus.directory(), "example/streams/source");
+
+        evaluate(nukleus, () -> write(streams, 4));
+
+        final OccupancySampler.Occupancy occupancy = nukleus.occupancy().occupancies().get(0);
+        assertEquals("example/streams/source streams", occupancy.name());
+        assertEquals(4 * (256 + 8), occupancy.highWater());
+        assertEquals(0L, nukleus.occupancy().occupancies().get(1).highWater());
+    }
+
+    @Test(expected = AssertionError.class)
+    public void shouldFailWhenOccupancyExceedsThreshold() throws Throwable
+    {
+        final NukleusRule nukleus = new NukleusRule()
+                .directory("target/nukleus-rule")
+                .streamsBufferCapacity(4096)
+                .throttleBufferCapacity(1024)
+                .cleanup(true)
+                .occupancy(0.5)
+                .streams("example", "source");
+
+        final File streams = new File(nukleus.directory(), "example/streams/source");
+
+        evaluate(nukleus, () -> write(streams, 10));
+    }
+
+    private static void write(
+        File streams,
+        int count)
+    {
+        try (StreamsLayout layout = new StreamsLayout(streams, 4096, 1024))
+        {
+            for (int i = 0; i < count; i++)
+            {
+                assertTrue(layout.streams().write(1, new UnsafeBuffer(new byte[256]), 0, 256));
+            }
+        }
+    }
+
+    private static void evaluate(
+        NukleusRule nukleus,
+        Runnable test) throws Throwable
+    {
+        nukleus.apply(new Statement()
+        {
+            @Override
+            public void evaluate()
+            {
+                test.run();
+            }
+        }, Description.EMPTY).evaluate();
+    }
+}
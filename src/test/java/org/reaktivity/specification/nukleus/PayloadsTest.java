@@ -0,0 +1,124 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.agrona.DirectBuffer;
+import org.junit.Test;
+
+public class PayloadsTest
+{
+    @Test
+    public void shouldCacheRandomPayload()
+    {
+        DirectBuffer buffer = Payloads.random(1000);
+
+        assertEquals(1000, buffer.capacity());
+        assertSame(buffer, Payloads.random(1000));
+    }
+
+    @Test
+    public void shouldCacheLargeRandomPayload()
+    {
+        final int length = 1024 * 1024;
+
+        assertSame(Payloads.random(length), Payloads.random(length));
+        assertTrue(Payloads.cachedBytes() <= Payloads.MAX_CACHED_BYTES);
+    }
+
+    @Test
+    public void shouldCachePayloadBytesWithoutCopying()
+    {
+        assertSame(Payloads.randomBytes(1000), Payloads.randomBytes(1000));
+        assertSame(Payloads.sequenceBytes(1000, 7), Payloads.sequenceBytes(1000, 7));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedPayloadsBeyondByteBudget()
+    {
+        final Payloads.Cache cache = new Payloads.Cache(2500);
+
+        final DirectBuffer first = cache.buffer(Payloads.sequenceKey(1000, 1));
+        final DirectBuffer second = cache.buffer(Payloads.sequenceKey(1000, 2));
+        assertSame(first, cache.buffer(Payloads.sequenceKey(1000, 1)));
+
+        cache.array(Payloads.sequenceKey(1000, 1));
+
+        assertEquals(2000L, cache.cachedBytes());
+        assertEquals(1, cache.cachedPayloads());
+        assertSame(first, cache.buffer(Payloads.sequenceKey(1000, 1)));
+        assertNotSame(second, cache.buffer(Payloads.sequenceKey(1000, 2)));
+    }
+
+    @Test
+    public void shouldNotCachePayloadAboveByteBudget()
+    {
+        final Payloads.Cache cache = new Payloads.Cache(3000);
+
+        cache.buffer(Payloads.sequenceKey(1000, 1));
+        final DirectBuffer buffer = cache.buffer(Payloads.sequenceKey(4000, 2));
+
+        assertEquals(4000, buffer.capacity());
+        assertNotSame(buffer, cache.buffer(Payloads.sequenceKey(4000, 2)));
+        assertEquals(1000L, cache.cachedBytes());
+        assertEquals(1, cache.cachedPayloads());
+    }
+
+    @Test
+    public void shouldFillRandomPayloadDeterministically()
+    {
+        byte[] small = Payloads.randomBytes(13);
+        byte[] large = Payloads.randomBytes(64);
+
+        byte[] prefix = new byte[8];
+        System.arraycopy(large, 0, prefix, 0, prefix.length);
+        byte[] expected = new byte[8];
+        System.arraycopy(small, 0, expected, 0, expected.length);
+
+        assertArrayEquals(expected, prefix);
+    }
+
+    @Test
+    public void shouldRepeatPattern()
+    {
+        byte[] array = Payloads.repeatBytes(new byte[] { 0x01, 0x02, 0x03 }, 7);
+
+        assertArrayEquals(new byte[] { 0x01, 0x02, 0x03, 0x01, 0x02, 0x03, 0x01 }, array);
+        assertArrayEquals(array, Payloads.repeatBytes(new byte[] { 0x01, 0x02, 0x03 }, 7));
+    }
+
+    @Test
+    public void shouldGenerateSequence()
+    {
+        DirectBuffer buffer = Payloads.sequence(300, 250);
+
+        assertEquals((byte) 250, buffer.getByte(0));
+        assertEquals((byte) 255, buffer.getByte(5));
+        assertEquals((byte) 0, buffer.getByte(6));
+        assertEquals((byte) (250 + 299), buffer.getByte(299));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyPattern()
+    {
+        Payloads.repeat(new byte[0], 10);
+    }
+}
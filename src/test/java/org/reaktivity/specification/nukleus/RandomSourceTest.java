@@ -0,0 +1,82 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class RandomSourceTest
+{
+    @Test
+    public void shouldRepeatSequenceForSameSeed()
+    {
+        Random first = new RandomSource(42L);
+        Random second = new RandomSource(42L);
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(first.nextLong(), second.nextLong());
+            assertEquals(first.nextInt(1000), second.nextInt(1000));
+            assertEquals(first.nextGaussian(), second.nextGaussian(), 0.0);
+        }
+    }
+
+    @Test
+    public void shouldSplitDeterministically()
+    {
+        RandomSource first = new RandomSource(42L).split();
+        RandomSource second = new RandomSource(42L).split();
+
+        assertEquals(first.nextLong(), second.nextLong());
+    }
+
+    @Test
+    public void shouldRestartSeededSourceOnEachCall()
+    {
+        Random seeded = RandomSource.seeded(7L);
+        long first = seeded.nextLong();
+        seeded.nextLong();
+
+        assertNotSame(seeded, RandomSource.seeded(7L));
+        assertEquals(first, RandomSource.seeded(7L).nextLong());
+        assertEquals(new RandomSource(7L).nextLong(), first);
+    }
+
+    @Test
+    public void shouldSupplyCurrentSourcePerThread() throws Exception
+    {
+        AtomicReference<RandomSource> other = new AtomicReference<>();
+        Thread thread = new Thread(() -> other.set(RandomSource.current()));
+        thread.start();
+        thread.join();
+
+        assertSame(RandomSource.current(), RandomSource.current());
+        assertNotSame(RandomSource.current(), other.get());
+    }
+
+    @Test
+    public void shouldResolveRandomFunction()
+    {
+        assertSame(RandomSource.current(), CoreFunctions.random());
+        assertEquals(RandomSource.seeded(11L).nextLong(), CoreFunctions.random(11L).nextLong());
+    }
+}
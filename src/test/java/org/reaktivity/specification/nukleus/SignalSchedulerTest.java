@@ -0,0 +1,141 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.agrona.collections.Long2LongHashMap;
+import org.junit.Test;
+
+public class SignalSchedulerTest
+{
+    @Test
+    public void shouldDeliverSignalWithinTickResolution()
+    {
+        final Long2LongHashMap signals = new Long2LongHashMap(-1L);
+        final SignalScheduler scheduler = new SignalScheduler(MILLISECONDS, 0L, 8L, 64, 16,
+            (s, c, i, d, n) -> signals.put(s, i));
+
+        scheduler.schedule(1L, 7L, 42, 100L);
+
+        assertEquals(0, scheduler.poll(99L));
+        assertEquals(1, scheduler.poll(104L));
+        assertEquals(42L, signals.get(1L));
+        assertEquals(0L, scheduler.pending());
+        assertEquals(1L, scheduler.delivered());
+        assertTrue(scheduler.maxLateness() < 8L);
+        assertFalse(scheduler.cancel(7L));
+    }
+
+    @Test
+    public void shouldReplaceSignalWithSameCancelId()
+    {
+        final Long2LongHashMap signals = new Long2LongHashMap(-1L);
+        final SignalScheduler scheduler = new SignalScheduler(MILLISECONDS, 0L, 8L, 64, 16,
+            (s, c, i, d, n) -> signals.put(i, d));
+
+        scheduler.schedule(1L, 7L, 1, 100L);
+        scheduler.schedule(1L, 7L, 2, 200L);
+
+        assertEquals(1L, scheduler.pending());
+        scheduler.poll(300L);
+
+        assertEquals(-1L, signals.get(1L));
+        assertEquals(200L, signals.get(2L));
+    }
+
+    @Test
+    public void shouldMassCancelPendingSignals()
+    {
+        final int count = 100_000;
+        final long[] delivered = new long[1];
+        final SignalScheduler scheduler = new SignalScheduler(MILLISECONDS, 0L, 1L, 1024, count,
+            (s, c, i, d, n) -> delivered[0]++);
+
+        for (int i = 0; i < count; i++)
+        {
+            scheduler.schedule(i + 1L, i + 1L, i, 1L + i % 5000);
+        }
+        assertEquals(count, scheduler.pending());
+
+        for (int i = 0; i < count; i += 2)
+        {
+            assertTrue(scheduler.cancel(i + 1L));
+        }
+        assertEquals(count / 2, scheduler.pending());
+        assertEquals(count / 2, scheduler.cancelled());
+
+        scheduler.poll(5000L);
+
+        assertEquals(count / 2, delivered[0]);
+        assertEquals(0L, scheduler.pending());
+    }
+
+    @Test
+    public void shouldBoundDeliveryJitter()
+    {
+        final int count = 100_000;
+        final SignalScheduler scheduler = new SignalScheduler(MILLISECONDS, 0L, 1L, 1024, count,
+            (s, c, i, d, n) -> assertTrue(n >= d));
+
+        for (int i = 0; i < count; i++)
+        {
+            scheduler.schedule(i + 1L, SignalScheduler.NO_CANCEL_ID, i, 1L + i % 10_000);
+        }
+
+        for (long now = 0L; now <= 10_000L; now++)
+        {
+            scheduler.poll(now);
+        }
+
+        assertEquals(count, scheduler.delivered());
+        assertEquals(0L, scheduler.maxLateness());
+        assertEquals(0L, scheduler.meanLateness());
+    }
+
+    @Test
+    public void shouldMeasureLatenessOfCoarsePolling()
+    {
+        final int count = 100_000;
+        final long[] lateness = new long[2];
+        final SignalScheduler scheduler = new SignalScheduler(MILLISECONDS, 0L, 1L, 1024, count,
+            (s, c, i, d, n) ->
+            {
+                lateness[0] = Math.max(lateness[0], n - d);
+                lateness[1] += n - d;
+            });
+
+        for (int i = 0; i < count; i++)
+        {
+            scheduler.schedule(i + 1L, SignalScheduler.NO_CANCEL_ID, i, 1L + i % 10_000);
+        }
+
+        for (long now = 0L; now <= 10_000L; now += 5L)
+        {
+            scheduler.poll(now);
+        }
+
+        assertEquals(count, scheduler.delivered());
+        assertEquals(0L, scheduler.pending());
+        assertEquals(4L, scheduler.maxLateness());
+        assertEquals(2L, scheduler.meanLateness());
+        assertEquals(lateness[0], scheduler.maxLateness());
+        assertEquals(lateness[1] / count, scheduler.meanLateness());
+    }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.agrona.MutableDirectBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SlabPoolTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldAcquireTransferAndRelease() throws Exception
+    {
+        final File location = new File(folder.getRoot(), "slabs/example");
+
+        try (SlabPool producer = SlabPool.create(location, 7, 2, 4096);
+             SlabPool consumer = SlabPool.map(location))
+        {
+            assertEquals(7, consumer.poolId());
+            assertEquals(2, consumer.slotCount());
+            assertEquals(4096, consumer.slotCapacity());
+
+            final int slot = producer.acquire(1L);
+            final MutableDirectBuffer buffer = producer.buffer(slot);
+            buffer.putStringWithoutLengthAscii(0, "zero copy");
+
+            assertTrue(producer.transfer(slot, 1L, 2L));
+            assertFalse(producer.release(slot, 1L));
+            assertEquals(2L, consumer.owner(slot));
+            assertEquals("zero copy", consumer.buffer(slot).getStringWithoutLengthAscii(0, 9));
+
+            assertTrue(consumer.release(slot, 2L));
+            assertEquals(SlabPool.NO_OWNER, producer.owner(slot));
+            assertEquals(0L, producer.acquired());
+        }
+    }
+
+    @Test
+    public void shouldNotAcquireWhenExhausted() throws Exception
+    {
+        try (SlabPool pool = SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 2, 64))
+        {
+            final int slot0 = pool.acquire(1L);
+            final int slot1 = pool.acquire(1L);
+
+            assertTrue(slot0 != slot1);
+            assertEquals(SlabPool.NO_SLOT, pool.acquire(1L));
+            assertEquals(2L, pool.acquired());
+
+            assertTrue(pool.release(slot1, 1L));
+            assertEquals(slot1, pool.acquire(3L));
+        }
+    }
+
+    @Test(timeout = 10_000L)
+    public void shouldHandOffSlotsAcrossMappingsUntilExhausted() throws Exception
+    {
+        final File location = new File(folder.getRoot(), "slabs/handoff");
+        final int messages = 10_000;
+
+        try (SlabPool producer = SlabPool.create(location, 1, 4, 64);
+             SlabPool consumer = SlabPool.map(location))
+        {
+            final BlockingQueue<Integer> handoffs = new ArrayBlockingQueue<>(messages);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            final Thread receiver = new Thread(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < messages; i++)
+                    {
+                        final int slot = handoffs.take();
+                        assertEquals(2L, consumer.owner(slot));
+                        assertEquals(i, consumer.buffer(slot).getInt(0));
+                        assertTrue(consumer.release(slot, 2L));
+                    }
+                }
+                catch (Throwable ex)
+                {
+                    failure.set(ex);
+                }
+            });
+            receiver.start();
+
+            for (int i = 0; i < messages; i++)
+            {
+                int slot;
+                while ((slot = producer.acquire(1L)) == SlabPool.NO_SLOT)
+                {
+                    Thread.yield();
+                }
+
+                producer.buffer(slot).putInt(0, i);
+                assertTrue(producer.transfer(slot, 1L, 2L));
+                assertFalse(producer.transfer(slot, 1L, 2L));
+                handoffs.add(slot);
+            }
+
+            receiver.join();
+
+            assertNull(failure.get());
+            assertEquals(0L, producer.acquired());
+            for (int slot = 0; slot < producer.slotCount(); slot++)
+            {
+                assertEquals(SlabPool.NO_OWNER, producer.owner(slot));
+            }
+        }
+    }
+
+    @Test
+    public void shouldAcquireSlotReleasedByOtherMapping() throws Exception
+    {
+        final File location = new File(folder.getRoot(), "slabs/exhausted");
+
+        try (SlabPool producer = SlabPool.create(location, 1, 1, 64);
+             SlabPool consumer = SlabPool.map(location))
+        {
+            final int slot = producer.acquire(1L);
+            assertTrue(producer.transfer(slot, 1L, 2L));
+            assertEquals(SlabPool.NO_SLOT, producer.acquire(1L));
+
+            assertFalse(consumer.release(slot, 1L));
+            assertTrue(consumer.release(slot, 2L));
+
+            assertEquals(slot, producer.acquire(1L));
+            assertEquals(1L, consumer.acquired());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnalignedSlotCapacity() throws Exception
+    {
+        SlabPool.create(new File(folder.getRoot(), "slabs"), 1, 2, 100);
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.SplittableRandom;
+
+import org.agrona.collections.Long2LongHashMap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WeightedFairSchedulerTest
+{
+    private static final long BUDGET_ID = 1L;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldBoundLatencyOfSmallStreamsUnderBulkContention() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            budgets.attach(BUDGET_ID);
+
+            final WeightedFairScheduler scheduler = new WeightedFairScheduler(budgets, BUDGET_ID, 0, 64, 16);
+            final Long2LongHashMap granted = new Long2LongHashMap(0L);
+
+            scheduler.attach(1L, 1);
+            scheduler.offer(1L, 1024 * 1024);
+
+            for (int tick = 0; tick < 16; tick++)
+            {
+                budgets.credit(BUDGET_ID, 1024L);
+                scheduler.schedule((s, c) -> granted.put(s, granted.get(s) + c));
+            }
+
+            for (long streamId = 3L; streamId <= 17L; streamId += 2)
+            {
+                scheduler.attach(streamId, 16);
+                scheduler.offer(streamId, 256);
+            }
+
+            int ticks = 0;
+            while (scheduler.pending(3L) + scheduler.pending(17L) != 0L)
+            {
+                budgets.credit(BUDGET_ID, 1024L);
+                scheduler.schedule((s, c) -> granted.put(s, granted.get(s) + c));
+                ticks++;
+            }
+
+            assertTrue(ticks <= 3);
+            for (long streamId = 3L; streamId <= 17L; streamId += 2)
+            {
+                assertEquals(256L, granted.get(streamId));
+                assertEquals(0L, scheduler.pending(streamId));
+            }
+            assertEquals(1, scheduler.ready());
+        }
+    }
+
+    @Test
+    public void shouldBoundTailLatencyOfInteractiveStreamUnderBulkContention() throws Exception
+    {
+        final long tickNanos = 1_000_000L;
+        final int messages = 1_000;
+        final long[] nanoTime = new long[1];
+
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            budgets.attach(BUDGET_ID);
+
+            final WeightedFairScheduler scheduler = new WeightedFairScheduler(budgets, BUDGET_ID, 0, 64, 16);
+            final SplittableRandom random = new SplittableRandom(0x5eedL);
+            final Deque<long[]> offers = new ArrayDeque<>();
+            final long[] latencies = new long[messages];
+            final long[] granted = new long[1];
+            final int[] completed = new int[1];
+
+            scheduler.attach(1L, 1);
+            scheduler.attach(3L, 16);
+            scheduler.offer(1L, Integer.MAX_VALUE);
+
+            long offered = 0L;
+            for (int sent = 0; completed[0] < messages; nanoTime[0] += tickNanos)
+            {
+                if (sent < messages && random.nextInt(4) == 0)
+                {
+                    final int length = 64 + random.nextInt(448);
+                    offered += length;
+                    offers.addLast(new long[] { nanoTime[0], offered });
+                    scheduler.offer(3L, length);
+                    sent++;
+                }
+
+                budgets.credit(BUDGET_ID, 1024L);
+                scheduler.schedule((s, c) ->
+                {
+                    if (s == 3L)
+                    {
+                        granted[0] += c;
+                        while (!offers.isEmpty() && offers.peekFirst()[1] <= granted[0])
+                        {
+                            latencies[completed[0]++] = nanoTime[0] - offers.pollFirst()[0];
+                        }
+                    }
+                });
+            }
+
+            Arrays.sort(latencies);
+            assertEquals(0L, latencies[messages * 99 / 100 - 1]);
+            assertTrue(latencies[messages - 1] <= tickNanos);
+        }
+    }
+
+    @Test
+    public void shouldShareCreditInProportionToWeight() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            budgets.attach(BUDGET_ID);
+
+            final WeightedFairScheduler scheduler = new WeightedFairScheduler(budgets, BUDGET_ID, 0, 32, 16);
+            final Long2LongHashMap granted = new Long2LongHashMap(0L);
+
+            scheduler.attach(1L, 1);
+            scheduler.attach(3L, 3);
+            scheduler.offer(1L, 1024 * 1024);
+            scheduler.offer(3L, 1024 * 1024);
+
+            for (int tick = 0; tick < 100; tick++)
+            {
+                budgets.credit(BUDGET_ID, 128L);
+                scheduler.schedule((s, c) -> granted.put(s, granted.get(s) + c));
+            }
+
+            assertEquals(3200L, granted.get(1L));
+            assertEquals(9600L, granted.get(3L));
+            assertEquals(0L, budgets.available(BUDGET_ID));
+        }
+    }
+
+    @Test
+    public void shouldReserveBudgetPaddingPerGrant() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            budgets.attach(BUDGET_ID);
+            budgets.credit(BUDGET_ID, 100L);
+
+            final WeightedFairScheduler scheduler = new WeightedFairScheduler(budgets, BUDGET_ID, 10, 64, 16);
+
+            scheduler.attach(1L, 1);
+            scheduler.offer(1L, 40);
+
+            assertEquals(1, scheduler.schedule((s, c) -> assertEquals(40, c)));
+            assertEquals(50L, budgets.available(BUDGET_ID));
+            assertEquals(0, scheduler.ready());
+        }
+    }
+
+    @Test
+    public void shouldSkipDetachedStreams() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            budgets.attach(BUDGET_ID);
+            budgets.credit(BUDGET_ID, 100L);
+
+            final WeightedFairScheduler scheduler = new WeightedFairScheduler(budgets, BUDGET_ID, 0, 64, 16);
+
+            scheduler.attach(1L, 1);
+            scheduler.offer(1L, 40);
+            scheduler.detach(1L);
+
+            assertEquals(0, scheduler.schedule((s, c) -> fail()));
+            assertEquals(100L, budgets.available(BUDGET_ID));
+            assertEquals(0, scheduler.ready());
+        }
+    }
+
+    @Test
+    public void shouldQueueReattachedStreamOnce() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            budgets.attach(BUDGET_ID);
+            budgets.credit(BUDGET_ID, 100L);
+
+            final WeightedFairScheduler scheduler = new WeightedFairScheduler(budgets, BUDGET_ID, 0, 64, 16);
+            final Long2LongHashMap granted = new Long2LongHashMap(0L);
+
+            scheduler.attach(1L, 1);
+            scheduler.offer(1L, 40);
+            scheduler.detach(1L);
+            scheduler.attach(1L, 1);
+            scheduler.offer(1L, 40);
+
+            assertEquals(1, scheduler.ready());
+            assertEquals(1, scheduler.schedule((s, c) -> granted.put(s, granted.get(s) + c)));
+            assertEquals(40L, granted.get(1L));
+            assertEquals(60L, budgets.available(BUDGET_ID));
+            assertEquals(0, scheduler.ready());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectOfferFromUnattachedStream() throws Exception
+    {
+        try (BudgetPool budgets = BudgetPool.create(new File(folder.getRoot(), "budgets"), 4))
+        {
+            new WeightedFairScheduler(budgets, BUDGET_ID, 0, 64, 16).offer(1L, 40);
+        }
+    }
+}
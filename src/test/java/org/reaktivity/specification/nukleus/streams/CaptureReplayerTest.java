@@ -0,0 +1,339 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.LongArrayList;
+import org.agrona.collections.LongHashSet;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reaktivity.specification.nukleus.IdAllocator;
+import org.reaktivity.specification.nukleus.Payloads;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.FrameFW;
+
+public class CaptureReplayerTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicBuffer buffer =
+            new UnsafeBuffer(ByteBuffer.allocateDirect(64 * 1024 + RingBufferDescriptor.TRAILER_LENGTH));
+    private final RingBuffer source = new ManyToOneRingBuffer(buffer);
+    private final RingBuffer target =
+            new ManyToOneRingBuffer(new UnsafeBuffer(ByteBuffer.allocateDirect(64 * 1024 + RingBufferDescriptor.TRAILER_LENGTH)));
+
+    private final long[] nanoTime = new long[1];
+    private final LongHashSet recordedIds = new LongHashSet();
+
+    private File directory;
+
+    @Before
+    public void captureFrames() throws Exception
+    {
+        directory = folder.newFolder("capture");
+
+        final FrameFW frameRO = new FrameFW();
+        final LoadGenerator generator = new LoadGenerator(source)
+                .routeId(0x01L)
+                .payloadSize(100)
+                .framesPerStream(3)
+                .batchSize(5);
+
+        try (CaptureLog capture = new CaptureLog(directory, 64 * 1024, 0))
+        {
+            final StreamsSpy spy = new StreamsSpy(buffer, capture, () -> nanoTime[0]).readLimit(1);
+
+            generator.onStart();
+            generator.doWork();
+
+            for (int i = 0; i < 5; i++)
+            {
+                nanoTime[0] += 1_000_000L;
+                spy.doWork();
+            }
+        }
+
+        source.read((t, b, o, l) -> recordedIds.add(frameRO.wrap(b, o, o + l).streamId()));
+        nanoTime[0] = 0L;
+    }
+
+    @Test
+    public void shouldReplayAtMaxSpeedWithRemappedIds() throws Exception
+    {
+        final DataFW dataRO = new DataFW();
+        final CaptureReplayer replayer = new CaptureReplayer(new CaptureReader(directory), target);
+
+        assertEquals(5, replayer.doWork());
+        assertEquals(0, replayer.doWork());
+        assertTrue(replayer.isDone());
+
+        final LongHashSet replayedIds = new LongHashSet();
+        target.read((t, b, o, l) ->
+        {
+            final DataFW data = t == DataFW.TYPE_ID ? dataRO.wrap(b, o, o + l) : null;
+            if (data != null)
+            {
+                assertEquals(100, data.length());
+                assertNotEquals(0x01L, data.routeId());
+                replayedIds.add(data.streamId());
+            }
+        });
+
+        assertEquals(1, replayedIds.size());
+        assertFalse(recordedIds.containsAll(replayedIds));
+        replayer.onClose();
+    }
+
+    @Test
+    public void shouldReplayAsRecorded() throws Exception
+    {
+        final CaptureReplayer replayer = new CaptureReplayer(new CaptureReader(directory), target, () -> nanoTime[0])
+                .pacing(CaptureReplayer.Pacing.AS_RECORDED)
+                .routeId(0x02L);
+
+        assertEquals(1, replayer.doWork());
+        assertEquals(0, replayer.doWork());
+
+        nanoTime[0] += 2_000_000L;
+        assertEquals(2, replayer.doWork());
+
+        nanoTime[0] += 10_000_000L;
+        assertEquals(2, replayer.doWork());
+        assertEquals(5L, replayer.frames());
+
+        final FrameFW frameRO = new FrameFW();
+        target.read((t, b, o, l) -> assertEquals(0x02L, frameRO.wrap(b, o, o + l).routeId()));
+        replayer.onClose();
+    }
+
+    @Test
+    public void shouldReplayPayloadLengthExcludingExtension() throws Exception
+    {
+        final File directory = folder.newFolder("extension");
+        final MutableDirectBuffer frame = new UnsafeBuffer(new byte[256]);
+        final DataFW data = new DataFW.Builder().wrap(frame, 0, frame.capacity())
+                .routeId(0x01L)
+                .streamId(0x03L)
+                .sequence(0L)
+                .acknowledge(0L)
+                .maximum(0)
+                .flags(0x03)
+                .budgetId(0L)
+                .reserved(100)
+                .payload(Payloads.random(100), 0, 100)
+                .extension(Payloads.random(16), 0, 16)
+                .build();
+        assertTrue(source.write(DataFW.TYPE_ID, data.buffer(), data.offset(), data.sizeof()));
+        capture(directory);
+
+        final DataFW dataRO = new DataFW();
+        final CaptureReplayer replayer = new CaptureReplayer(new CaptureReader(directory), target);
+
+        assertEquals(1, replayer.doWork());
+        assertEquals(1, target.read((t, b, o, l) -> assertEquals(100, dataRO.wrap(b, o, o + l).length())));
+        replayer.onClose();
+    }
+
+    @Test
+    public void shouldMapReplyBegunAfterInitialClosed() throws Exception
+    {
+        final File directory = folder.newFolder("reply");
+        final MutableDirectBuffer frame = new UnsafeBuffer(new byte[256]);
+
+        assertTrue(source.write(BeginFW.TYPE_ID, frame, 0, begin(frame, 0x03L)));
+        assertTrue(source.write(EndFW.TYPE_ID, frame, 0, end(frame, 0x03L)));
+        assertTrue(source.write(BeginFW.TYPE_ID, frame, 0, begin(frame, 0x02L)));
+        assertTrue(source.write(EndFW.TYPE_ID, frame, 0, end(frame, 0x02L)));
+        capture(directory);
+
+        final FrameFW frameRO = new FrameFW();
+        final LongArrayList replayedIds = new LongArrayList();
+        final CaptureReplayer replayer = new CaptureReplayer(new CaptureReader(directory), target);
+
+        assertEquals(4, replayer.doWork());
+        target.read((t, b, o, l) -> replayedIds.addLong(frameRO.wrap(b, o, o + l).streamId()));
+
+        assertEquals(4, replayedIds.size());
+        assertEquals(replayedIds.getLong(0), replayedIds.getLong(1));
+        assertEquals(IdAllocator.replyId(replayedIds.getLong(0)), replayedIds.getLong(2));
+        assertEquals(replayedIds.getLong(2), replayedIds.getLong(3));
+        replayer.onClose();
+    }
+
+    @Test
+    public void shouldReplayDataFlags() throws Exception
+    {
+        final File directory = folder.newFolder("flags");
+        final MutableDirectBuffer frame = new UnsafeBuffer(new byte[256]);
+
+        assertTrue(source.write(DataFW.TYPE_ID, frame, 0, data(frame, 0x01, 0L)));
+        assertTrue(source.write(DataFW.TYPE_ID, frame, 0, data(frame, 0x02, 0L)));
+        capture(directory);
+
+        final DataFW dataRO = new DataFW();
+        final LongArrayList flags = new LongArrayList();
+        final CaptureReplayer replayer = new CaptureReplayer(new CaptureReader(directory), target);
+
+        assertEquals(2, replayer.doWork());
+        target.read((t, b, o, l) -> flags.addLong(dataRO.wrap(b, o, o + l).flags()));
+
+        assertEquals(2, flags.size());
+        assertEquals(0x01L, flags.getLong(0));
+        assertEquals(0x02L, flags.getLong(1));
+        replayer.onClose();
+    }
+
+    @Test
+    public void shouldPaceByFrameTimestampsWhenFirstFrameHasOne() throws Exception
+    {
+        final File directory = folder.newFolder("timestamps");
+        final MutableDirectBuffer frame = new UnsafeBuffer(new byte[256]);
+
+        assertTrue(source.write(DataFW.TYPE_ID, frame, 0, data(frame, 0x03, 1_000_000L)));
+        assertTrue(source.write(DataFW.TYPE_ID, frame, 0, data(frame, 0x03, 0L)));
+        assertTrue(source.write(DataFW.TYPE_ID, frame, 0, data(frame, 0x03, 3_000_000L)));
+        nanoTime[0] = 50_000_000L;
+        capture(directory);
+        nanoTime[0] = 0L;
+
+        final CaptureReplayer replayer = new CaptureReplayer(new CaptureReader(directory), target, () -> nanoTime[0])
+                .pacing(CaptureReplayer.Pacing.AS_RECORDED);
+
+        assertEquals(2, replayer.doWork());
+
+        nanoTime[0] += 1_000_000L;
+        assertEquals(0, replayer.doWork());
+
+        nanoTime[0] += 1_000_000L;
+        assertEquals(1, replayer.doWork());
+        assertEquals(3L, replayer.frames());
+        replayer.onClose();
+    }
+
+    @Test
+    public void shouldRetryReplayWhenRingIsFull() throws Exception
+    {
+        final RingBuffer target =
+                new ManyToOneRingBuffer(new UnsafeBuffer(ByteBuffer.allocateDirect(1024 + RingBufferDescriptor.TRAILER_LENGTH)));
+        final UnsafeBuffer filler = new UnsafeBuffer(new byte[64]);
+        while (target.write(1, filler, 0, filler.capacity()))
+        {
+            // fill
+        }
+
+        final FrameFW frameRO = new FrameFW();
+        final LongArrayList replayedIds = new LongArrayList();
+        final CaptureReplayer replayer = new CaptureReplayer(new CaptureReader(directory), target);
+
+        assertEquals(0, replayer.doWork());
+
+        target.read((t, b, o, l) -> filler.putInt(0, t), Integer.MAX_VALUE);
+        assertEquals(5, replayer.doWork());
+        assertTrue(replayer.isDone());
+
+        final MessageHandler handler = (t, b, o, l) -> replayedIds.addLong(frameRO.wrap(b, o, o + l).streamId());
+        assertEquals(5, target.read(handler) + target.read(handler));
+        assertEquals(5, replayedIds.size());
+        for (int i = 1; i < replayedIds.size(); i++)
+        {
+            assertEquals(replayedIds.getLong(0), replayedIds.getLong(i));
+        }
+        replayer.onClose();
+    }
+
+    private void capture(
+        File directory)
+    {
+        try (CaptureLog capture = new CaptureLog(directory, 64 * 1024, 0))
+        {
+            new StreamsSpy(buffer, capture, () -> nanoTime[0]).doWork();
+        }
+    }
+
+    private static int begin(
+        MutableDirectBuffer frame,
+        long streamId)
+    {
+        final DirectBuffer extension = new UnsafeBuffer(new byte[0]);
+        return new BeginFW.Builder().wrap(frame, 0, frame.capacity())
+                .routeId(0x01L)
+                .streamId(streamId)
+                .sequence(0L)
+                .acknowledge(0L)
+                .maximum(0)
+                .affinity(0L)
+                .extension(extension, 0, 0)
+                .build()
+                .sizeof();
+    }
+
+    private static int end(
+        MutableDirectBuffer frame,
+        long streamId)
+    {
+        final DirectBuffer extension = new UnsafeBuffer(new byte[0]);
+        return new EndFW.Builder().wrap(frame, 0, frame.capacity())
+                .routeId(0x01L)
+                .streamId(streamId)
+                .sequence(0L)
+                .acknowledge(0L)
+                .maximum(0)
+                .extension(extension, 0, 0)
+                .build()
+                .sizeof();
+    }
+
+    private static int data(
+        MutableDirectBuffer frame,
+        int flags,
+        long timestamp)
+    {
+        return new DataFW.Builder().wrap(frame, 0, frame.capacity())
+                .routeId(0x01L)
+                .streamId(0x03L)
+                .sequence(0L)
+                .acknowledge(0L)
+                .maximum(0)
+                .timestamp(timestamp)
+                .flags(flags)
+                .budgetId(0L)
+                .reserved(16)
+                .payload(Payloads.random(16), 0, 16)
+                .extension(new UnsafeBuffer(new byte[0]), 0, 0)
+                .build()
+                .sizeof();
+    }
+}
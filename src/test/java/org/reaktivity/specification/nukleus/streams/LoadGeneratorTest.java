@@ -0,0 +1,211 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static org.agrona.IoUtil.createEmptyFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.agrona.CloseHelper;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+
+public class LoadGeneratorTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final BeginFW beginRO = new BeginFW();
+    private final DataFW dataRO = new DataFW();
+    private final EndFW endRO = new EndFW();
+
+    @Test
+    public void shouldWriteBeginDataEndPerStream() throws Exception
+    {
+        final RingBuffer streams = newRingBuffer(64 * 1024);
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .routeId(0x01L)
+                .streams(2)
+                .payloadSize(128)
+                .framesPerStream(3)
+                .batchSize(10);
+
+        generator.onStart();
+        assertEquals(10, generator.doWork());
+
+        final List<Integer> typeIds = new ArrayList<>();
+        final long[] sequence = new long[1];
+        streams.read((t, b, o, l) ->
+        {
+            typeIds.add(t);
+            if (t == DataFW.TYPE_ID)
+            {
+                final DataFW data = dataRO.wrap(b, o, o + l);
+                assertEquals(0x01L, data.routeId());
+                assertEquals(1L, data.streamId() & 0x01L);
+                assertEquals(128, data.length());
+                sequence[0] = Math.max(sequence[0], data.sequence());
+            }
+        });
+
+        assertEquals(BeginFW.TYPE_ID, typeIds.get(0).intValue());
+        assertEquals(BeginFW.TYPE_ID, typeIds.get(1).intValue());
+        assertEquals(DataFW.TYPE_ID, typeIds.get(2).intValue());
+        assertEquals(EndFW.TYPE_ID, typeIds.get(8).intValue());
+        assertEquals(EndFW.TYPE_ID, typeIds.get(9).intValue());
+        assertEquals(256L, sequence[0]);
+        assertEquals(10L, generator.frames());
+    }
+
+    @Test
+    public void shouldPatchStreamIdAndSequenceIntoEncodedFrames() throws Exception
+    {
+        final RingBuffer streams = newRingBuffer(64 * 1024);
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .routeId(0x01L)
+                .payloadSize(64)
+                .framesPerStream(2)
+                .batchSize(8);
+
+        generator.onStart();
+        assertEquals(8, generator.doWork());
+
+        final List<Long> streamIds = new ArrayList<>();
+        final List<Long> sequences = new ArrayList<>();
+        streams.read((t, b, o, l) ->
+        {
+            switch (t)
+            {
+            case BeginFW.TYPE_ID:
+                final BeginFW begin = beginRO.wrap(b, o, o + l);
+                streamIds.add(begin.streamId());
+                sequences.add(begin.sequence());
+                break;
+            case DataFW.TYPE_ID:
+                final DataFW data = dataRO.wrap(b, o, o + l);
+                streamIds.add(data.streamId());
+                sequences.add(data.sequence());
+                break;
+            case EndFW.TYPE_ID:
+                final EndFW end = endRO.wrap(b, o, o + l);
+                streamIds.add(end.streamId());
+                sequences.add(end.sequence());
+                break;
+            }
+        });
+
+        assertEquals(8, streamIds.size());
+        assertEquals(streamIds.get(0), streamIds.get(3));
+        assertEquals(streamIds.get(4), streamIds.get(7));
+        assertNotEquals(streamIds.get(0), streamIds.get(4));
+        assertEquals(Arrays.asList(0L, 0L, 64L, 128L, 0L, 0L, 64L, 128L), sequences);
+    }
+
+    @Test
+    public void shouldStopWhenRingIsFull() throws Exception
+    {
+        final RingBuffer streams = newRingBuffer(4 * 1024);
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(256)
+                .framesPerStream(Integer.MAX_VALUE)
+                .batchSize(1024);
+
+        generator.onStart();
+        final int workCount = generator.doWork();
+
+        assertTrue(workCount > 0 && workCount < 1024);
+        assertEquals(0, generator.doWork());
+    }
+
+    @Test
+    public void shouldLimitRate() throws Exception
+    {
+        final long[] nanoTime = new long[1];
+        final RingBuffer streams = newRingBuffer(64 * 1024);
+        final LoadGenerator generator = new LoadGenerator(streams, () -> nanoTime[0])
+                .payloadSize(16)
+                .framesPerStream(Integer.MAX_VALUE)
+                .rate(1000L);
+
+        generator.onStart();
+        assertEquals(0, generator.doWork());
+
+        nanoTime[0] = 10_000_000L;
+        assertEquals(10, generator.doWork());
+        assertEquals(0, generator.doWork());
+        assertEquals(1000.0, generator.framesPerSecond(), 0.0);
+    }
+
+    @Test
+    public void shouldLimitHighRateAfterLongElapsedTime() throws Exception
+    {
+        final long[] nanoTime = new long[1];
+        final RingBuffer streams = newRingBuffer(64 * 1024);
+        final LoadGenerator generator = new LoadGenerator(streams, () -> nanoTime[0])
+                .payloadSize(16)
+                .framesPerStream(Integer.MAX_VALUE)
+                .batchSize(8)
+                .rate(1_000_000L);
+
+        generator.onStart();
+
+        nanoTime[0] = 10_000_000_000_000L;
+        assertEquals(8, generator.doWork());
+    }
+
+    @Test
+    public void shouldWriteIntoStreamsLayout() throws Exception
+    {
+        final File location = new File(folder.getRoot(), "example/streams/source");
+        final int streamsCapacity = 64 * 1024;
+        final int throttleCapacity = 4 * 1024;
+        final int length = streamsCapacity + throttleCapacity + 2 * RingBufferDescriptor.TRAILER_LENGTH;
+        CloseHelper.close(createEmptyFile(location, length));
+
+        try (StreamsLayout layout = new StreamsLayout(location, streamsCapacity, throttleCapacity))
+        {
+            final LoadGenerator generator = new LoadGenerator(layout.streams())
+                    .batchSize(3);
+
+            generator.onStart();
+            assertEquals(3, generator.doWork());
+            assertEquals(3, layout.streams().read((t, b, o, l) -> {}));
+            assertEquals(throttleCapacity, layout.throttle().capacity());
+        }
+    }
+
+    private static RingBuffer newRingBuffer(
+        int capacity)
+    {
+        final int length = capacity + RingBufferDescriptor.TRAILER_LENGTH;
+        return new ManyToOneRingBuffer(new UnsafeBuffer(ByteBuffer.allocateDirect(length)));
+    }
+}
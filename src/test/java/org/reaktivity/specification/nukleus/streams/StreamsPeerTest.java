@@ -0,0 +1,411 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.LongArrayList;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.junit.Test;
+import org.reaktivity.specification.nukleus.CoreFunctions;
+import org.reaktivity.specification.nukleus.internal.types.stream.AbortFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BatchFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.ResetFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.WindowFW;
+
+public class StreamsPeerTest
+{
+    private final RingBuffer streams = newRingBuffer(64 * 1024);
+    private final RingBuffer throttle = newRingBuffer(64 * 1024);
+    private final RingBuffer replies = newRingBuffer(64 * 1024);
+
+    private final MutableDirectBuffer writeBuffer = new UnsafeBuffer(new byte[1024]);
+    private final WindowFW windowRO = new WindowFW();
+
+    @Test
+    public void shouldSinkAndReplenishWindow() throws Exception
+    {
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(1024)
+                .framesPerStream(8)
+                .batchSize(10);
+        final StreamsPeer peer = new StreamsPeer(streams, throttle)
+                .window(4096)
+                .padding(16);
+
+        generator.onStart();
+        generator.doWork();
+
+        assertEquals(10, peer.doWork());
+        assertEquals(0, peer.streamCount());
+        assertEquals(5L, peer.windows());
+
+        final long[] acknowledge = new long[1];
+        throttle.read((t, b, o, l) ->
+        {
+            assertEquals(WindowFW.TYPE_ID, t);
+            final WindowFW window = windowRO.wrap(b, o, o + l);
+            assertEquals(4096, window.maximum());
+            assertEquals(16, window.padding());
+            acknowledge[0] = window.acknowledge();
+        });
+        assertEquals(8192L, acknowledge[0]);
+    }
+
+    @Test
+    public void shouldResetWhenFixedCreditIsExceeded() throws Exception
+    {
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(1024)
+                .framesPerStream(4)
+                .batchSize(5);
+        final StreamsPeer peer = new StreamsPeer(streams, throttle)
+                .mode(StreamsPeer.Mode.FIXED)
+                .window(2048);
+
+        generator.onStart();
+        generator.doWork();
+
+        assertEquals(5, peer.doWork());
+        assertEquals(1L, peer.windows());
+        assertEquals(2L, peer.resets());
+
+        final int[] resets = new int[1];
+        throttle.read((t, b, o, l) -> resets[0] += t == ResetFW.TYPE_ID ? 1 : 0);
+        assertEquals(2, resets[0]);
+    }
+
+    @Test
+    public void shouldEchoOnReplyStream() throws Exception
+    {
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(64)
+                .framesPerStream(2)
+                .batchSize(1);
+        final StreamsPeer peer = new StreamsPeer(streams, throttle, replies)
+                .mode(StreamsPeer.Mode.ECHO);
+
+        generator.onStart();
+        generator.doWork();
+        peer.doWork();
+
+        final long replyId = readReplyBegin(replies);
+        assertEquals(0L, peer.windows());
+
+        doReplyWindow(replyId, 0L, 4096);
+        assertEquals(1, peer.doWork());
+
+        final long[] window = new long[2];
+        assertEquals(1, throttle.read((t, b, o, l) ->
+        {
+            assertEquals(WindowFW.TYPE_ID, t);
+            final WindowFW frame = windowRO.wrap(b, o, o + l);
+            assertEquals(replyId ^ 1L, frame.streamId());
+            window[0] = frame.acknowledge();
+            window[1] = frame.maximum();
+        }));
+        assertEquals(0L, window[0]);
+        assertEquals(4096L, window[1]);
+
+        generator.batchSize(3).doWork();
+        peer.doWork();
+
+        final DataFW dataRO = new DataFW();
+        final int[] counts = new int[2];
+        assertEquals(3, replies.read((t, b, o, l) ->
+        {
+            if (t == DataFW.TYPE_ID)
+            {
+                final DataFW data = dataRO.wrap(b, o, o + l);
+                assertEquals(replyId, data.streamId());
+                assertEquals(64L * counts[0], data.sequence());
+                counts[0]++;
+            }
+            else if (t == EndFW.TYPE_ID)
+            {
+                counts[1]++;
+            }
+        }));
+        assertEquals(2, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(0, peer.replyCount());
+    }
+
+    @Test
+    public void shouldResetWhenReplyWindowIsExceeded() throws Exception
+    {
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(128)
+                .framesPerStream(2)
+                .batchSize(1);
+        final StreamsPeer peer = new StreamsPeer(streams, throttle, replies)
+                .mode(StreamsPeer.Mode.ECHO);
+
+        generator.onStart();
+        generator.doWork();
+        peer.doWork();
+
+        final long replyId = readReplyBegin(replies);
+        doReplyWindow(replyId, 0L, 64);
+        generator.doWork();
+        peer.doWork();
+
+        final int[] resets = new int[1];
+        throttle.read((t, b, o, l) -> resets[0] += t == ResetFW.TYPE_ID ? 1 : 0);
+        assertEquals(1, resets[0]);
+
+        final int[] aborts = new int[1];
+        replies.read((t, b, o, l) -> aborts[0] += t == AbortFW.TYPE_ID ? 1 : 0);
+        assertEquals(1, aborts[0]);
+        assertEquals(0, peer.streamCount());
+        assertEquals(0, peer.replyCount());
+    }
+
+    @Test
+    public void shouldResetInitialStreamWhenReplyIsReset() throws Exception
+    {
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(64)
+                .framesPerStream(2)
+                .batchSize(1);
+        final StreamsPeer peer = new StreamsPeer(streams, throttle, replies)
+                .mode(StreamsPeer.Mode.ECHO);
+
+        generator.onStart();
+        generator.doWork();
+        peer.doWork();
+
+        final long replyId = readReplyBegin(replies);
+        final ResetFW reset = new ResetFW.Builder().wrap(writeBuffer, 0, writeBuffer.capacity())
+                .routeId(0L)
+                .streamId(replyId)
+                .sequence(0L)
+                .acknowledge(0L)
+                .maximum(0)
+                .build();
+        streams.write(ResetFW.TYPE_ID, writeBuffer, 0, reset.sizeof());
+
+        assertEquals(1, peer.doWork());
+        assertEquals(0, peer.streamCount());
+        assertEquals(0, peer.replyCount());
+        assertEquals(1L, peer.resets());
+        assertEquals(0, replies.read((t, b, o, l) -> assertEquals(BeginFW.TYPE_ID, t)));
+    }
+
+    @Test
+    public void shouldAdvanceSequenceByBatchReserved() throws Exception
+    {
+        final StreamsPeer peer = new StreamsPeer(streams, throttle)
+                .window(4096);
+
+        doFrame(BeginFW.TYPE_ID, CoreFunctions.begin().streamId(3L).build());
+        doFrame(BatchFW.TYPE_ID, CoreFunctions.batch()
+                                              .streamId(3L)
+                                              .segment(new byte[1024])
+                                              .segment(new byte[1024])
+                                              .segment(new byte[1024])
+                                              .build());
+        doFrame(BatchFW.TYPE_ID, CoreFunctions.batch()
+                                              .streamId(3L)
+                                              .sequence(3072L)
+                                              .segment(new byte[2048])
+                                              .build());
+
+        assertEquals(3, peer.doWork());
+        assertEquals(0L, peer.resets());
+        assertEquals(3L, peer.windows());
+
+        final LongArrayList acknowledges = new LongArrayList();
+        throttle.read((t, b, o, l) -> acknowledges.addLong(windowRO.wrap(b, o, o + l).acknowledge()));
+        assertEquals(Arrays.asList(0L, 3072L, 5120L), acknowledges);
+    }
+
+    @Test
+    public void shouldResetWhenBatchReservedExceedsWindow() throws Exception
+    {
+        final StreamsPeer peer = new StreamsPeer(streams, throttle)
+                .mode(StreamsPeer.Mode.FIXED)
+                .window(2048);
+
+        doFrame(BeginFW.TYPE_ID, CoreFunctions.begin().streamId(3L).build());
+        doFrame(BatchFW.TYPE_ID, CoreFunctions.batch()
+                                              .streamId(3L)
+                                              .segment(new byte[1024])
+                                              .segment(new byte[1024])
+                                              .build());
+        doFrame(BatchFW.TYPE_ID, CoreFunctions.batch()
+                                              .streamId(3L)
+                                              .sequence(2048L)
+                                              .segment(new byte[16])
+                                              .build());
+
+        assertEquals(3, peer.doWork());
+        assertEquals(1L, peer.resets());
+        assertEquals(0, peer.streamCount());
+    }
+
+    @Test
+    public void shouldEchoBatchOnReplyStream() throws Exception
+    {
+        final StreamsPeer peer = new StreamsPeer(streams, throttle, replies)
+                .mode(StreamsPeer.Mode.ECHO);
+
+        doFrame(BeginFW.TYPE_ID, CoreFunctions.begin().streamId(3L).build());
+        peer.doWork();
+        doReplyWindow(readReplyBegin(replies), 0L, 4096);
+        doFrame(BatchFW.TYPE_ID, CoreFunctions.batch()
+                                              .streamId(3L)
+                                              .segment(new byte[100])
+                                              .segment(new byte[200])
+                                              .build());
+
+        assertEquals(2, peer.doWork());
+
+        final BatchFW batchRO = new BatchFW();
+        assertEquals(1, replies.read((t, b, o, l) ->
+        {
+            assertEquals(BatchFW.TYPE_ID, t);
+            final BatchFW batch = batchRO.wrap(b, o, o + l);
+            assertEquals(2L, batch.streamId());
+            assertEquals(0L, batch.sequence());
+            assertEquals(300, batch.reserved());
+            assertEquals(2, batch.count());
+        }));
+    }
+
+    @Test
+    public void shouldRetryWindowWhenThrottleIsFull() throws Exception
+    {
+        final RingBuffer throttle = newRingBuffer(1024);
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(1024)
+                .framesPerStream(8)
+                .batchSize(3);
+        final StreamsPeer peer = new StreamsPeer(streams, throttle)
+                .window(4096);
+
+        final UnsafeBuffer filler = new UnsafeBuffer(new byte[64]);
+        while (throttle.write(1, filler, 0, filler.capacity()))
+        {
+            // fill
+        }
+
+        generator.onStart();
+        generator.doWork();
+
+        assertEquals(3, peer.doWork());
+        assertEquals(0L, peer.windows());
+        assertEquals(1L, peer.failedWrites());
+        assertEquals(1, peer.pendingWindows());
+
+        assertEquals(0, peer.doWork());
+        assertEquals(2L, peer.failedWrites());
+
+        throttle.read((t, b, o, l) -> filler.putInt(0, t), Integer.MAX_VALUE);
+
+        assertEquals(1, peer.doWork());
+        assertEquals(1L, peer.windows());
+        assertEquals(0, peer.pendingWindows());
+
+        final long[] acknowledge = new long[1];
+        final MessageHandler handler = (t, b, o, l) -> acknowledge[0] = windowRO.wrap(b, o, o + l).acknowledge();
+        assertEquals(1, throttle.read(handler) + throttle.read(handler));
+        assertEquals(2048L, acknowledge[0]);
+    }
+
+    @Test
+    public void shouldCountFailedEchoWrites() throws Exception
+    {
+        final RingBuffer replies = newRingBuffer(4096);
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(256)
+                .framesPerStream(16)
+                .batchSize(18);
+        final StreamsPeer peer = new StreamsPeer(streams, throttle, replies)
+                .mode(StreamsPeer.Mode.ECHO);
+
+        generator.onStart();
+        generator.batchSize(1).doWork();
+        peer.doWork();
+
+        doReplyWindow(readReplyBegin(replies), 0L, 64 * 1024);
+        generator.batchSize(17).doWork();
+        peer.doWork();
+
+        assertTrue(peer.failedWrites() > 0L);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectEchoWithoutReplies() throws Exception
+    {
+        new StreamsPeer(streams, throttle).mode(StreamsPeer.Mode.ECHO);
+    }
+
+    private void doFrame(
+        int msgTypeId,
+        byte[] frame)
+    {
+        assertTrue(streams.write(msgTypeId, new UnsafeBuffer(frame), 0, frame.length));
+    }
+
+    private static long readReplyBegin(
+        RingBuffer replies)
+    {
+        final long[] replyId = new long[1];
+        assertEquals(1, replies.read((t, b, o, l) ->
+        {
+            assertEquals(BeginFW.TYPE_ID, t);
+            replyId[0] = new BeginFW().wrap(b, o, o + l).streamId();
+        }));
+        return replyId[0];
+    }
+
+    private void doReplyWindow(
+        long replyId,
+        long acknowledge,
+        int maximum)
+    {
+        final WindowFW window = new WindowFW.Builder().wrap(writeBuffer, 0, writeBuffer.capacity())
+                .routeId(0L)
+                .streamId(replyId)
+                .sequence(acknowledge)
+                .acknowledge(acknowledge)
+                .maximum(maximum)
+                .budgetId(0L)
+                .padding(0)
+                .build();
+        streams.write(WindowFW.TYPE_ID, writeBuffer, 0, window.sizeof());
+    }
+
+    private static RingBuffer newRingBuffer(
+        int capacity)
+    {
+        final int length = capacity + RingBufferDescriptor.TRAILER_LENGTH;
+        return new ManyToOneRingBuffer(new UnsafeBuffer(ByteBuffer.allocateDirect(length)));
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2016-2021 The Reaktivity Project
+ *
+ * The Reaktivity Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.reaktivity.specification.nukleus.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.AtomicBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.ManyToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RecordDescriptor;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reaktivity.specification.nukleus.internal.types.stream.BeginFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.DataFW;
+import org.reaktivity.specification.nukleus.internal.types.stream.EndFW;
+
+public class StreamsSpyTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicBuffer buffer =
+            new UnsafeBuffer(ByteBuffer.allocateDirect(64 * 1024 + RingBufferDescriptor.TRAILER_LENGTH));
+    private final RingBuffer streams = new ManyToOneRingBuffer(buffer);
+
+    @Test
+    public void shouldCaptureFramesWithoutConsuming() throws Exception
+    {
+        final File directory = folder.newFolder("capture");
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .routeId(0x01L)
+                .payloadSize(256)
+                .framesPerStream(2)
+                .batchSize(4);
+
+        try (CaptureLog capture = new CaptureLog(directory, 4096, 0))
+        {
+            final StreamsSpy spy = new StreamsSpy(buffer, capture, () -> 42L);
+
+            generator.onStart();
+            generator.doWork();
+
+            assertEquals(4, spy.doWork());
+            assertEquals(0, spy.doWork());
+            assertEquals(4, streams.read((t, b, o, l) -> {}));
+        }
+
+        try (CaptureReader reader = new CaptureReader(directory))
+        {
+            assertTrue(reader.next());
+            assertEquals(BeginFW.TYPE_ID, reader.typeId());
+            assertEquals(0x01L, reader.routeId());
+            assertEquals(42L, reader.timestamp());
+            final long streamId = reader.streamId();
+
+            assertTrue(reader.next());
+            assertEquals(DataFW.TYPE_ID, reader.typeId());
+            assertEquals(streamId, reader.streamId());
+            assertEquals(0L, reader.sequence());
+
+            assertTrue(reader.next());
+            assertEquals(256L, reader.sequence());
+
+            assertTrue(reader.next());
+            assertEquals(EndFW.TYPE_ID, reader.typeId());
+            assertEquals(512L, reader.sequence());
+
+            assertFalse(reader.next());
+            assertEquals(4, reader.position());
+        }
+    }
+
+    @Test
+    public void shouldRollSegmentsAndSkipConsumedFrames() throws Exception
+    {
+        final File directory = folder.newFolder("capture");
+        final LoadGenerator generator = new LoadGenerator(streams)
+                .payloadSize(16)
+                .framesPerStream(Integer.MAX_VALUE)
+                .batchSize(10);
+
+        try (CaptureLog capture = new CaptureLog(directory, 4 * CaptureLog.RECORD_LENGTH, 2))
+        {
+            final StreamsSpy spy = new StreamsSpy(buffer, capture);
+
+            generator.onStart();
+            generator.doWork();
+            streams.read((t, b, o, l) -> {}, 4);
+
+            assertEquals(6, spy.doWork());
+            assertTrue(spy.droppedBytes() > 0L);
+
+            generator.doWork();
+            assertEquals(10, spy.doWork());
+            assertEquals(3L, capture.segmentIndex());
+        }
+
+        assertFalse(CaptureLog.segmentFile(directory, 1L).exists());
+
+        try (CaptureReader reader = new CaptureReader(directory))
+        {
+            int count = 0;
+            while (reader.next())
+            {
+                assertEquals(DataFW.TYPE_ID, reader.typeId());
+                count++;
+            }
+            assertEquals(8, count);
+        }
+    }
+
+    @Test
+    public void shouldDropRecordConsumedWhileCopying() throws Exception
+    {
+        final File directory = folder.newFolder("capture");
+        final AtomicBuffer buffer = new UnsafeBuffer(ByteBuffer.allocateDirect(64 * 1024 + RingBufferDescriptor.TRAILER_LENGTH))
+        {
+            @Override
+            public void getBytes(
+                int index,
+                MutableDirectBuffer dstBuffer,
+                int dstIndex,
+                int length)
+            {
+                super.getBytes(index, dstBuffer, dstIndex, length);
+                setMemory(index - RecordDescriptor.HEADER_LENGTH, RecordDescriptor.HEADER_LENGTH + length, (byte) 0);
+            }
+        };
+        final LoadGenerator generator = new LoadGenerator(new ManyToOneRingBuffer(buffer))
+                .batchSize(1);
+
+        try (CaptureLog capture = new CaptureLog(directory, 4096, 0))
+        {
+            final StreamsSpy spy = new StreamsSpy(buffer, capture);
+
+            generator.onStart();
+            generator.doWork();
+
+            assertEquals(0, spy.doWork());
+            assertEquals(0L, spy.frames());
+        }
+
+        try (CaptureReader reader = new CaptureReader(directory))
+        {
+            assertFalse(reader.next());
+        }
+    }
+}